@@ -0,0 +1,303 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/** The alternates of this repository: other .gitlet directories on the
+ * same host whose objects it may read as its own, kept one path per line
+ * in the .gitlet directory. Alternates are only read. Lookups of commits,
+ * blobs and chunks try the local store first and then each alternate in
+ * turn, loose objects before packs; new objects are always written
+ * locally, and objects fetched from a remote are not fetched again when an
+ * alternate has them. Reads from another repository, such as the origin of
+ * a partial clone, consult its alternates the same way. Alternates of
+ * alternates are not followed.
+ *
+ * An alternate must outlive the repositories borrowing from it and must
+ * not prune objects they may still reach, since once dedup has removed the
+ * local copies the alternate holds the only one. Removing an alternate
+ * copies back whatever the local branches reach that only it holds.
+ *
+ * @author Nitin Nazeer
+ */
+public class Alternates {
+
+    /** The file object repr of the alternates file. */
+    static final File ALTERNATES_FILE = Utils.join(Repo.GITLET_DIR,
+            "alternates");
+
+    /** The alternate .gitlet directories, once read. */
+    private static volatile List<File> alternates;
+
+    /** The alternates of other repositories read from, such as the origin
+     * of a partial clone, by .gitlet directory, once read. */
+    private static final ConcurrentHashMap<File, List<File>> FOREIGN =
+            new ConcurrentHashMap<File, List<File>>();
+
+    /** Returns the alternate .gitlet directories, in the order they are
+     * consulted. */
+    static List<File> list() {
+        List<File> result = alternates;
+        if (result == null) {
+            result = read(Repo.GITLET_DIR);
+            alternates = result;
+        }
+        return result;
+    }
+
+    /** Returns the alternates listed in the .gitlet directory
+     * GITLETDIR. */
+    private static List<File> read(File gitletDir) {
+        File file = Utils.join(gitletDir, ALTERNATES_FILE.getName());
+        ArrayList<File> dirs = new ArrayList<File>();
+        if (file.isFile()) {
+            for (String line : Utils.readContentsAsString(file).split("\n")) {
+                if (!line.isBlank()) {
+                    dirs.add(new File(line.trim()));
+                }
+            }
+        }
+        return Collections.unmodifiableList(dirs);
+    }
+
+    /** Returns the object directories of the alternates that stand in for
+     * DIR, the commit, blob or chunk directory of this or another
+     * repository, or none if DIR is not an object directory. */
+    static List<File> of(File dir) {
+        String name = dir.getName();
+        File gitletDir = dir.getParentFile();
+        if (gitletDir == null || !name.equals(Repo.COMMIT_DIR.getName())
+                && !name.equals(Repo.BLOBS_DIR.getName())
+                && !name.equals(Repo.CHUNKS_DIR.getName())) {
+            return Collections.emptyList();
+        }
+        List<File> dirs = Repo.GITLET_DIR.equals(gitletDir) ? list()
+                : FOREIGN.computeIfAbsent(gitletDir, Alternates::read);
+        if (dirs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        ArrayList<File> result = new ArrayList<File>();
+        for (File alternate : dirs) {
+            result.add(Utils.join(alternate, dir.getName()));
+        }
+        return result;
+    }
+
+    /** Add the .gitlet directory at PATH as an alternate. */
+    static void add(String path) {
+        File dir = new File(path).getAbsoluteFile().toPath().normalize()
+                .toFile();
+        if (!Utils.join(dir, Repo.COMMIT_DIR.getName()).isDirectory()) {
+            throw Utils.error("No Gitlet repository at %s.", path);
+        }
+        if (dir.equals(Repo.GITLET_DIR.getAbsoluteFile())) {
+            throw Utils.error("A repository cannot be its own alternate.");
+        }
+        if (list().contains(dir)) {
+            throw Utils.error("That alternate already exists.");
+        }
+        if (!Remote.objectFormat(dir).equals(HashEngine.current().getName())) {
+            throw Utils.error("Alternate uses a different object format.");
+        }
+        ArrayList<File> dirs = new ArrayList<File>(list());
+        dirs.add(dir);
+        save(dirs);
+    }
+
+    /** Stop using the alternate at PATH, first copying into the local
+     * store every commit, blob and chunk reachable from the commits TIPS
+     * or the blobs STAGED that no other store holds. Returns the number of
+     * objects copied. */
+    static int remove(String path, Collection<String> tips,
+                      Collection<String> staged) {
+        File dir = new File(path).getAbsoluteFile().toPath().normalize()
+                .toFile();
+        ArrayList<File> dirs = new ArrayList<File>(list());
+        if (!dirs.remove(dir)) {
+            throw Utils.error("No such alternate exists.");
+        }
+        return locked(() -> {
+            int copied = 0;
+            HashSet<String> blobs = new HashSet<String>(staged);
+            HashSet<String> seen = new HashSet<String>();
+            ArrayDeque<String> pending = new ArrayDeque<String>(tips);
+            while (!pending.isEmpty()) {
+                String code = pending.remove();
+                if (!seen.add(code)) {
+                    continue;
+                }
+                copied += keep(Repo.COMMIT_DIR, code, dirs);
+                Commit commit = ObjectStore.read(Repo.COMMIT_DIR, code,
+                        Commit.class);
+                if (commit == null) {
+                    throw Utils.error("Commit %s not found.", code);
+                }
+                if (commit.getParentCode() != null) {
+                    pending.add(commit.getParentCode());
+                }
+                blobs.addAll(commit.getTracked().values());
+            }
+            boolean chunks = !ObjectStore.list(
+                    Utils.join(dir, Repo.CHUNKS_DIR.getName())).isEmpty();
+            HashSet<String> seenChunks = new HashSet<String>();
+            for (String code : blobs) {
+                copied += keep(Repo.BLOBS_DIR, code, dirs);
+                Blob blob = chunks ? ObjectStore.read(Repo.BLOBS_DIR, code,
+                        Blob.class) : null;
+                if (blob != null && blob.getChunks() != null) {
+                    for (String chunk : blob.getChunks()) {
+                        if (seenChunks.add(chunk)) {
+                            copied += keep(Repo.CHUNKS_DIR, chunk, dirs);
+                        }
+                    }
+                }
+            }
+            ObjectWriter.flush();
+            save(dirs);
+            return copied;
+        });
+    }
+
+    /** Copy object CODE into the local object directory DIR unless it or
+     * one of the alternates OTHERS holds it already. Returns 1 if it was
+     * copied and 0 if not, as when it is nowhere, like the blobs a partial
+     * clone has not fetched. */
+    private static int keep(File dir, String code, List<File> others) {
+        if (ObjectStore.containsLocal(dir, code)) {
+            return 0;
+        }
+        for (File other : others) {
+            if (ObjectStore.containsLocal(Utils.join(other, dir.getName()),
+                    code)) {
+                return 0;
+            }
+        }
+        byte[] contents = ObjectStore.readContents(dir, code);
+        if (contents == null) {
+            return 0;
+        }
+        ObjectWriter.write(dir, code, contents);
+        return 1;
+    }
+
+    /** Delete the local commits, blobs and chunks that an alternate also
+     * holds: loose ones are removed, and a pack is removed or, if it holds
+     * others too, rewritten without them, holding the maintenance lock.
+     * Returns the number of objects removed
+     * and the bytes of disk space that freed. */
+    static long[] dedup() {
+        return locked(() -> {
+            ObjectWriter.flush();
+            long[] result = new long[2];
+            for (byte tag : new byte[] {Remote.COMMIT, Remote.BLOB,
+                Remote.CHUNK}) {
+                File dir = Remote.dir(Repo.GITLET_DIR, tag);
+                List<File> alternates = of(dir);
+                if (!alternates.isEmpty()) {
+                    dedupLoose(dir, alternates, result);
+                    dedupPacks(dir, alternates, result);
+                }
+            }
+            return result;
+        });
+    }
+
+    /** Returns the result of ACTION, run holding the maintenance lock so
+     * that no repack or prune runs meanwhile. */
+    private static <T> T locked(Supplier<T> action) {
+        try (FileChannel channel = FileChannel.open(
+                Maintenance.LOCK_FILE.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                throw Utils.error("Maintenance is already running.");
+            }
+            return action.get();
+        } catch (IOException excp) {
+            throw Utils.error("Could not lock for maintenance: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /** Delete the loose objects of DIR that one of ALTERNATES holds, adding
+     * their number and bytes to RESULT. */
+    private static void dedupLoose(File dir, List<File> alternates,
+                                   long[] result) {
+        for (String code : ObjectStore.listLoose(dir)) {
+            File f = ObjectStore.locate(dir, code);
+            if (f == null || !held(alternates, code)) {
+                continue;
+            }
+            long length = f.length();
+            if (f.delete()) {
+                result[0] += 1;
+                result[1] += length;
+            }
+        }
+    }
+
+    /** Drop the objects that one of ALTERNATES holds from the packs of DIR,
+     * adding their number and the bytes freed to RESULT. */
+    private static void dedupPacks(File dir, List<File> alternates,
+                                   long[] result) {
+        for (Pack pack : Pack.packs(dir, true)) {
+            ArrayList<Integer> kept = new ArrayList<Integer>();
+            for (int i = 0; i < pack.count(); i += 1) {
+                if (!held(alternates, pack.code(i))) {
+                    kept.add(i);
+                }
+            }
+            if (kept.size() == pack.count()) {
+                continue;
+            }
+            long freed = pack.size();
+            if (!kept.isEmpty()) {
+                Pack.Writer writer = new Pack.Writer(dir);
+                for (int i : kept) {
+                    writer.add(pack.code(i), pack.contents(i));
+                }
+                freed -= writer.size();
+                writer.publish();
+            }
+            result[0] += pack.count() - kept.size();
+            result[1] += freed;
+            pack.delete();
+        }
+    }
+
+    /** Returns true if one of the object directories ALTERNATES holds
+     * object CODE. */
+    private static boolean held(List<File> alternates, String code) {
+        for (File alternate : alternates) {
+            if (ObjectStore.containsLocal(alternate, code)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Replace the alternates with DIRS. */
+    private static void save(List<File> dirs) {
+        StringBuilder lines = new StringBuilder();
+        for (File dir : dirs) {
+            lines.append(dir.getPath()).append('\n');
+        }
+        if (dirs.isEmpty()) {
+            ALTERNATES_FILE.delete();
+        } else {
+            Utils.writeContents(ALTERNATES_FILE, lines.toString());
+        }
+        alternates = null;
+    }
+}
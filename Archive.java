@@ -0,0 +1,145 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/** A tar or zip archive of the files of a commit, streamed straight from
+ * the object store. Blobs are read by a pool of threads, at most WINDOW
+ * ahead of the one being written, so memory stays bounded by WINDOW small
+ * blobs; the chunks of large blobs are copied to the output one at a time.
+ *
+ * @author Nitin Nazeer
+ */
+public class Archive {
+
+    /** The most blobs read ahead of the one being written. */
+    static final int WINDOW = 16;
+
+    /** Size of a tar block. */
+    static final int BLOCK = 512;
+
+    /** Largest size a tar header holds in octal digits. */
+    static final long MAX_OCTAL_SIZE = 077777777777L;
+
+    /** The commit archived. */
+    private final Commit commit;
+
+    /** True for a zip archive, false for tar. */
+    private final boolean zip;
+
+    /** An archive of COMMIT, as zip if ZIP is true and as tar otherwise. */
+    Archive(Commit commit, boolean zip) {
+        this.commit = commit;
+        this.zip = zip;
+    }
+
+    /** Write the archive to OUT, which is left open. */
+    void write(OutputStream out) throws IOException {
+        ArrayList<String> names =
+                new ArrayList<String>(this.commit.getTracked().keySet());
+        Collections.sort(names);
+        ZipOutputStream zipOut = this.zip ? new ZipOutputStream(out) : null;
+        long mtime = this.commit.getTimestamp().toEpochSecond();
+
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()));
+        ArrayDeque<Future<Blob>> ahead = new ArrayDeque<Future<Blob>>();
+        try {
+            int next = 0;
+            for (String name : names) {
+                while (next < names.size() && ahead.size() < WINDOW) {
+                    String code = this.commit.getTracked().get(
+                            names.get(next));
+                    ahead.add(pool.submit(() -> Blob.read(code)));
+                    next += 1;
+                }
+                Blob blob = ahead.remove().get();
+                if (blob == null) {
+                    throw Utils.error("Missing blob of %s.", name);
+                }
+                if (zipOut != null) {
+                    ZipEntry entry = new ZipEntry(name);
+                    entry.setTime(mtime * 1000);
+                    zipOut.putNextEntry(entry);
+                    blob.writeTo(zipOut);
+                    zipOut.closeEntry();
+                } else {
+                    long size = blob.size();
+                    out.write(tarHeader(name, size, mtime));
+                    blob.writeTo(out);
+                    out.write(new byte[(int) (-size & (BLOCK - 1))]);
+                }
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw Utils.error("Could not read blobs: %s", excp.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+        if (zipOut != null) {
+            zipOut.finish();
+        } else {
+            out.write(new byte[2 * BLOCK]);
+        }
+        out.flush();
+    }
+
+    /** Returns the ustar header of a regular file NAME of SIZE bytes last
+     * modified at MTIME, in seconds since the epoch. Names too long for
+     * the name field are split into the prefix field at a slash. */
+    static byte[] tarHeader(String name, long size, long mtime) {
+        byte[] header = new byte[BLOCK];
+        byte[] path = name.getBytes(StandardCharsets.UTF_8);
+        int split = 0;
+        if (path.length > 100) {
+            split = name.lastIndexOf('/', 155);
+            if (split <= 0 || path.length - split - 1 > 100) {
+                throw Utils.error("Name too long for tar: %s", name);
+            }
+            put(header, 345, name.substring(0, split));
+            split += 1;
+        }
+        put(header, 0, name.substring(split));
+        put(header, 100, "0000644");
+        put(header, 108, "0000000");
+        put(header, 116, "0000000");
+        if (size <= MAX_OCTAL_SIZE) {
+            put(header, 124, String.format("%011o", size));
+        } else {
+            header[124] = (byte) 0x80;
+            for (int i = 0; i < 8; i += 1) {
+                header[135 - i] = (byte) (size >>> (8 * i));
+            }
+        }
+        put(header, 136, String.format("%011o", mtime));
+        header[156] = '0';
+        put(header, 257, "ustar");
+        put(header, 263, "00");
+        for (int i = 148; i < 156; i += 1) {
+            header[i] = ' ';
+        }
+        int sum = 0;
+        for (byte b : header) {
+            sum += b & 0xff;
+        }
+        put(header, 148, String.format("%06o", sum));
+        header[154] = 0;
+        header[155] = ' ';
+        return header;
+    }
+
+    /** Copy the UTF-8 bytes of S into HEADER at OFFSET. */
+    private static void put(byte[] header, int offset, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+}
@@ -0,0 +1,338 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+
+/** Reachability bitmaps over the commits and blobs of a repository.
+ *
+ * Every object is given a number the first time it is seen, and the numbers
+ * are appended to an index that is never rewritten, so a number means the
+ * same object for as long as the repository exists. Numbers are given and
+ * appended while holding a lock on the index, after reading what other
+ * processes have appended since, so no two objects share one. The set of
+ * objects reachable from a commit is then a bitmap over those numbers.
+ * Bitmaps are stored, compressed with run-length encoded words in the
+ * style of EWAH, for every INTERVAL-th commit of a walk and for the tips
+ * asked about, so finding what a new commit reaches means walking back
+ * only to the nearest stored bitmap. Chunks are not numbered; they are
+ * reached through their blobs.
+ *
+ * A bitmap is written to a temporary file and moved into place, and an
+ * append to the index that a crash cut short is cut off before the next,
+ * so neither is ever read partly written.
+ *
+ * @author Nitin Nazeer
+ */
+public class Bitmaps {
+
+    /** Name of the bitmap directory in a .gitlet directory. */
+    static final String DIR_NAME = "bitmaps";
+
+    /** A walk stores a bitmap every this many commits. */
+    static final int INTERVAL = 64;
+
+    /** A tip's bitmap is stored if the walk to it was at least this
+     * long. */
+    static final int MIN_TIP_WALK = 16;
+
+    /** The .gitlet directory whose objects are numbered. */
+    private final File gitletDir;
+
+    /** The directory of the stored bitmaps, by commit hashcode. */
+    private final File commitsDir;
+
+    /** The object index: one tag and hashcode per line, in number
+     * order. */
+    private final File indexFile;
+
+    /** False if nothing is written back, as for another repository. */
+    private final boolean persist;
+
+    /** The object of each number, as its tag followed by its hashcode. */
+    private final ArrayList<String> objects = new ArrayList<String>();
+
+    /** The number of each object, keyed as in objects. */
+    private final HashMap<String, Integer> numbers =
+            new HashMap<String, Integer>();
+
+    /** How many bytes of the index file have been read into objects. */
+    private long read;
+
+    /** The bitmaps of the repository at GITLETDIR. New numbers and bitmaps
+     * are saved only if it is the repository in the working directory. */
+    Bitmaps(File gitletDir) {
+        this.gitletDir = gitletDir;
+        File dir = Utils.join(gitletDir, DIR_NAME);
+        this.commitsDir = Utils.join(dir, "commits");
+        this.indexFile = Utils.join(dir, "index");
+        this.persist = gitletDir.equals(Repo.GITLET_DIR);
+        if (this.indexFile.isFile()) {
+            readLines(Utils.readContents(this.indexFile));
+        }
+    }
+
+    /** Returns true if the repository at GITLETDIR has an object index. */
+    static boolean exist(File gitletDir) {
+        return Utils.join(gitletDir, DIR_NAME, "index").isFile();
+    }
+
+    /** Returns the objects reachable from any commit of TIPS. */
+    BitSet reachable(Collection<String> tips) {
+        BitSet result = new BitSet();
+        for (String tip : tips) {
+            result.or(reachable(tip));
+        }
+        return result;
+    }
+
+    /** Returns the objects reachable from commit TIP: the commit, its
+     * ancestors and every blob they track. */
+    BitSet reachable(String tip) {
+        ArrayList<Commit> walk = new ArrayList<Commit>();
+        ArrayList<String> walkCodes = new ArrayList<String>();
+        BitSet result = null;
+        for (String code = tip; code != null; ) {
+            result = load(code);
+            if (result != null) {
+                break;
+            }
+            Commit commit = Remote.readCommit(this.gitletDir, code);
+            walk.add(commit);
+            walkCodes.add(code);
+            code = commit.getParentCode();
+        }
+        BitSet bits = result == null ? new BitSet() : result;
+
+        ArrayList<String> toStore = new ArrayList<String>();
+        ArrayList<BitSet> stored = new ArrayList<BitSet>();
+        if (!walk.isEmpty()) {
+            numberLocked(() -> {
+                for (int i = walk.size() - 1; i >= 0; i -= 1) {
+                    bits.set(number(Remote.COMMIT, walkCodes.get(i)));
+                    for (String blob : walk.get(i).getTracked().values()) {
+                        bits.set(number(Remote.BLOB, blob));
+                    }
+                    int depth = walk.size() - i;
+                    if (depth % INTERVAL == 0
+                            || (i == 0 && depth >= MIN_TIP_WALK)) {
+                        toStore.add(walkCodes.get(i));
+                        stored.add((BitSet) bits.clone());
+                    }
+                }
+            });
+        }
+        if (this.persist && !toStore.isEmpty()) {
+            for (int i = 0; i < toStore.size(); i += 1) {
+                store(toStore.get(i), encode(stored.get(i)));
+            }
+        }
+        return bits;
+    }
+
+    /** Save CONTENTS as the bitmap of commit CODE, through a temporary
+     * file moved into place in one step. */
+    private void store(String code, byte[] contents) {
+        File f = ObjectStore.file(this.commitsDir, code);
+        f.getParentFile().mkdirs();
+        try {
+            Path temp = Files.createTempFile(
+                    this.commitsDir.getParentFile().toPath(), "bitmap", null);
+            Files.write(temp, contents);
+            Files.move(temp, f.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Could not save bitmap %s: %s", code,
+                    excp.getMessage());
+        }
+    }
+
+    /** Returns true if object CODE of kind TAG is in BITS. */
+    boolean contains(BitSet bits, byte tag, String code) {
+        Integer n = this.numbers.get((char) tag + code);
+        return n != null && bits.get(n);
+    }
+
+    /** Returns the kind of object N: Remote.COMMIT or Remote.BLOB. */
+    byte tag(int n) {
+        return (byte) this.objects.get(n).charAt(0);
+    }
+
+    /** Returns the hashcode of object N. */
+    String code(int n) {
+        return this.objects.get(n).substring(1);
+    }
+
+    /** Returns the number of object CODE of kind TAG, giving it the next
+     * free number if it has none. Only called from numberLocked. */
+    private int number(byte tag, String code) {
+        String key = (char) tag + code;
+        Integer result = this.numbers.get(key);
+        if (result == null) {
+            result = this.objects.size();
+            this.numbers.put(key, result);
+            this.objects.add(key);
+        }
+        return result;
+    }
+
+    /** Returns the stored bitmap of commit CODE, or null if there is
+     * none. */
+    private BitSet load(String code) {
+        File f = ObjectStore.locate(this.commitsDir, code);
+        if (f == null) {
+            return null;
+        }
+        BitSet result = decode(Utils.readContents(f));
+        if (result.length() > this.objects.size()) {
+            try (FileChannel channel = FileChannel.open(
+                    this.indexFile.toPath(), StandardOpenOption.READ);
+                 FileLock lock = channel.lock(0, Long.MAX_VALUE, true)) {
+                readTail(channel);
+            } catch (IOException excp) {
+                throw Utils.error("Could not read the object index: %s",
+                        excp.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /** Run NUMBERING, which numbers objects, holding the lock on the
+     * index after reading the numbers other processes have appended to
+     * it, and append the numbers it gives after the last complete line.
+     * Numbers of a repository not persisted are only kept in memory. */
+    private void numberLocked(Runnable numbering) {
+        if (!this.persist) {
+            numbering.run();
+            return;
+        }
+        this.indexFile.getParentFile().mkdirs();
+        try (FileChannel channel = FileChannel.open(this.indexFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            readTail(channel);
+            int first = this.objects.size();
+            numbering.run();
+            StringBuilder lines = new StringBuilder();
+            for (int i = first; i < this.objects.size(); i += 1) {
+                lines.append(this.objects.get(i)).append('\n');
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(
+                    lines.toString().getBytes(StandardCharsets.UTF_8));
+            long pos = this.read;
+            channel.truncate(pos);
+            this.read += bytes.remaining();
+            while (bytes.hasRemaining()) {
+                pos += channel.write(bytes, pos);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Could not save the object index: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /** Number the objects appended to the index file open in CHANNEL since
+     * it was last read. */
+    private void readTail(FileChannel channel) throws IOException {
+        ByteBuffer tail = ByteBuffer.allocate(
+                (int) (channel.size() - this.read));
+        while (tail.hasRemaining()
+                && channel.read(tail, this.read + tail.position()) >= 0) {
+            continue;
+        }
+        readLines(tail.array());
+    }
+
+    /** Number the objects of the complete lines of BYTES, which continue
+     * the index file from where it was last read. */
+    private void readLines(byte[] bytes) {
+        int start = 0;
+        for (int i = 0; i < bytes.length; i += 1) {
+            if (bytes[i] == '\n') {
+                if (i > start) {
+                    String line = new String(bytes, start, i - start,
+                            StandardCharsets.UTF_8);
+                    this.numbers.put(line, this.objects.size());
+                    this.objects.add(line);
+                }
+                start = i + 1;
+            }
+        }
+        this.read += start;
+    }
+
+    /** Returns BITS compressed as a sequence of markers, each followed by
+     * its literal words. A marker holds, from the top bit down, the value
+     * of a run of all-zero or all-one words, the length of the run, and the
+     * number of literal words after it. */
+    static byte[] encode(BitSet bits) {
+        long[] words = bits.toLongArray();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(words.length);
+            int i = 0;
+            while (i < words.length) {
+                long fill = words[i] == -1L ? -1L : 0L;
+                int run = 0;
+                while (i + run < words.length && words[i + run] == fill) {
+                    run += 1;
+                }
+                int literals = 0;
+                while (i + run + literals < words.length
+                        && words[i + run + literals] != 0
+                        && words[i + run + literals] != -1L) {
+                    literals += 1;
+                }
+                out.writeLong((fill & (1L << 63)) | ((long) run << 32)
+                        | literals);
+                for (int k = 0; k < literals; k += 1) {
+                    out.writeLong(words[i + run + k]);
+                }
+                i += run + literals;
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Could not encode bitmap.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the bitmap compressed into BYTES by encode. */
+    static BitSet decode(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(bytes))) {
+            long[] words = new long[in.readInt()];
+            int i = 0;
+            while (i < words.length) {
+                long marker = in.readLong();
+                long fill = marker < 0 ? -1L : 0L;
+                int run = (int) ((marker >>> 32) & 0x7fffffffL);
+                int literals = (int) marker;
+                for (int k = 0; k < run; k += 1) {
+                    words[i++] = fill;
+                }
+                for (int k = 0; k < literals; k += 1) {
+                    words[i++] = in.readLong();
+                }
+            }
+            return BitSet.valueOf(words);
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt bitmap.");
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** Line-by-line attribution of a file to the commits that last changed each
+ * line. The history is walked only through commits that changed the file,
+ * and only the lines not yet attributed are carried back through each diff.
+ * Every finished blame is cached under the commit and filename it
+ * describes, since the owners of a blob's lines depend on the history that
+ * led to it, so a walk stops as soon as it reaches a commit whose version
+ * of the file was blamed before.
+ *
+ * @author Nitin Nazeer
+ */
+public class Blame {
+
+    /** The file object repr of the blame cache directory. */
+    static final File BLAME_DIR = Utils.join(Repo.GITLET_DIR, "blame");
+
+    /** A line of a blamed file. */
+    public static class Line {
+        /** The hashcode of the commit that last changed the line. */
+        private final String commit;
+
+        /** The line number, from 1. */
+        private final int number;
+
+        /** The text of the line. */
+        private final String text;
+
+        /** Line NUMBER, with TEXT, last changed by COMMIT. */
+        Line(String commit, int number, String text) {
+            this.commit = commit;
+            this.number = number;
+            this.text = text;
+        }
+
+        /** Returns the hashcode of the commit that last changed the
+         * line. */
+        public String getCommit() {
+            return this.commit;
+        }
+
+        /** Returns the line number, from 1. */
+        public int getNumber() {
+            return this.number;
+        }
+
+        /** Returns the text of the line. */
+        public String getText() {
+            return this.text;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %4d) %s", this.commit.substring(0, 8),
+                    this.number, this.text);
+        }
+    }
+
+    /** Returns the hashcode of the commit that last changed each line of
+     * FILENAME as of commit HEAD, which must track it.
+     *
+     * @param head the commit whose version of the file is blamed.
+     * @param filename the file to blame. */
+    @SuppressWarnings("unchecked")
+    static String[] owners(Commit head, String filename) {
+        String headCode = head.getTracked().get(filename);
+        String headKey = key(head, filename);
+        ArrayList<String> cached = ObjectStore.read(BLAME_DIR, headKey,
+                ArrayList.class);
+        if (cached != null) {
+            return cached.toArray(new String[cached.size()]);
+        }
+
+        String[] lines = lines(headCode);
+        String[] owner = new String[lines.length];
+        int[] pending = new int[lines.length];
+        int[] pos = new int[lines.length];
+        int numPending = lines.length;
+        for (int i = 0; i < lines.length; i += 1) {
+            pending[i] = i;
+            pos[i] = i;
+        }
+
+        Commit curr = head;
+        String currCode = headCode;
+        while (numPending > 0) {
+            if (curr != head) {
+                cached = ObjectStore.read(BLAME_DIR, key(curr, filename),
+                        ArrayList.class);
+                if (cached != null) {
+                    for (int k = 0; k < numPending; k += 1) {
+                        owner[pending[k]] = cached.get(pos[pending[k]]);
+                    }
+                    break;
+                }
+            }
+            Commit parent = curr.getParent();
+            String parentCode = null;
+            if (parent != null) {
+                parentCode = curr.mightHaveChanged(filename)
+                        ? parent.getTracked().get(filename) : currCode;
+            }
+            if (parentCode == null) {
+                for (int k = 0; k < numPending; k += 1) {
+                    owner[pending[k]] = curr.code();
+                }
+                break;
+            }
+            if (!parentCode.equals(currCode)) {
+                int[] origin = origins(parentCode, currCode);
+                int kept = 0;
+                for (int k = 0; k < numPending; k += 1) {
+                    int line = pending[k];
+                    int from = origin[pos[line]];
+                    if (from < 0) {
+                        owner[line] = curr.code();
+                    } else {
+                        pos[line] = from;
+                        pending[kept] = line;
+                        kept += 1;
+                    }
+                }
+                numPending = kept;
+            }
+            curr = parent;
+            currCode = parentCode;
+        }
+
+        ObjectStore.write(BLAME_DIR, headKey,
+                new ArrayList<String>(Arrays.asList(owner)));
+        return owner;
+    }
+
+    /** Returns the name of the cached blame of FILENAME as of commit
+     * COMMIT. */
+    private static String key(Commit commit, String filename) {
+        return HashEngine.current().hash(commit.code() + "\n" + filename);
+    }
+
+    /** Returns, for each line of blob NEWCODE, the index of the line of blob
+     * OLDCODE it was kept from, or -1 if it was inserted. */
+    private static int[] origins(String oldCode, String newCode) {
+        String[] oldLines = lines(oldCode);
+        String[] newLines = lines(newCode);
+        int[] result = new int[newLines.length];
+        Diff.diff(oldLines, newLines, new Diff.Listener() {
+            @Override
+            public void equal(int a, int b) {
+                result[b] = a;
+            }
+
+            @Override
+            public void delete(int a) {
+            }
+
+            @Override
+            public void insert(int b) {
+                result[b] = -1;
+            }
+        });
+        return result;
+    }
+
+    /** Returns the lines of the blob CODE. */
+    static String[] lines(String code) {
+        Blob blob = Blob.read(code);
+        return Diff.lines(blob.getContents());
+    }
+}
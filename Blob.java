@@ -1,36 +1,292 @@
 package gitlet;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 
-/** The Blob class representing file contents.
+/** The Blob class representing file contents. Files of at least
+ * largeFileThreshold() bytes are split into content-defined chunks, stored once
+ * each in the chunks directory, and the blob keeps only their hashcodes.
  * @author Nitin Nazeer
  */
 public class Blob implements Serializable {
 
-    /** The string contents of a file. */
+    /** The value computed for the original class, kept so that objects
+     * written before chunks, hash and size were added stay readable, with
+     * those fields null. */
+    private static final long serialVersionUID = 4096529928877007987L;
+
+    /** Files at least this large are stored as chunks unless
+     * core.largeFileThreshold says otherwise. */
+    static final long DEFAULT_LARGE_FILE_THRESHOLD = 1024 * 1024;
+
+    /** Size of the memory-mapped windows large files are read through. */
+    static final long WINDOW = 64L * 1024 * 1024;
+
+    /** The string contents of a file, or null if the blob is chunked. */
     private String contents;
 
+    /** The hashcodes of the chunks making up the file, in order, or null if
+     * the blob holds its contents directly. */
+    private ArrayList<String> chunks;
+
+    /** The hashcode of a chunked blob's contents. */
+    private String hash;
+
+    /** The size of a chunked blob's contents in bytes. */
+    private long size;
+
     /** @param givenContents the contents of the blob. */
     public Blob(String givenContents) {
         this.contents = givenContents;
     }
 
-    /** Return the contents of the blob. */
+    /** A chunked blob.
+     *
+     * @param givenChunks the hashcodes of the chunks, in order.
+     * @param givenHash the hashcode of the whole contents.
+     * @param givenSize the length of the whole contents. */
+    private Blob(ArrayList<String> givenChunks, String givenHash,
+                 long givenSize) {
+        this.chunks = givenChunks;
+        this.hash = givenHash;
+        this.size = givenSize;
+    }
+
+    /** Returns the blob with hashcode CODE, or null if it doesn't exist.
+     * A partial clone fetches a blob it lacks from its origin first. */
+    public static Blob read(String code) {
+        Blob result = ObjectStore.read(Repo.BLOBS_DIR, code, Blob.class);
+        if (result == null && Promisor.fetch(code)) {
+            result = ObjectStore.read(Repo.BLOBS_DIR, code, Blob.class);
+        }
+        return result;
+    }
+
+    /** Returns a blob of the contents of FILE. Large files are chunked,
+     * saving any chunk not already in the chunks directory. They are read
+     * through memory-mapped windows rather than copied onto the heap. */
+    public static Blob fromFile(File file) {
+        if (file.length() < largeFileThreshold()) {
+            return new Blob(Utils.readContentsAsString(file));
+        }
+        HashEngine engine = HashEngine.current();
+        MessageDigest whole = engine.newDigest();
+        ArrayList<String> codes = new ArrayList<String>();
+        long size;
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            size = in.size();
+            long pos = 0;
+            while (pos < size) {
+                int len = (int) Math.min(WINDOW, size - pos);
+                boolean last = pos + len == size;
+                MappedByteBuffer window =
+                        in.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                int off = 0;
+                while (off < len && (last || len - off >= Chunker.MAX_SIZE)) {
+                    int n = Chunker.cut(window, off, len - off);
+                    ByteBuffer chunk = window.slice(off, n);
+                    whole.update(chunk.duplicate());
+                    codes.add(saveChunk(chunk));
+                    off += n;
+                }
+                pos += off;
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Could not read %s: %s", file.getName(),
+                    excp.getMessage());
+        }
+        return new Blob(codes, engine.finish(whole), size);
+    }
+
+    /** Returns a blob of DATA. Data of at least largeFileThreshold() bytes
+     * is chunked as a file of the same contents would be, saving any chunk
+     * not already in the chunks directory. */
+    public static Blob fromBytes(byte[] data) {
+        if (data.length < largeFileThreshold()) {
+            return new Blob(new String(data, StandardCharsets.UTF_8));
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        ArrayList<String> codes = new ArrayList<String>();
+        for (int off = 0; off < data.length; ) {
+            int n = Chunker.cut(buffer, off, data.length - off);
+            codes.add(saveChunk(buffer.slice(off, n)));
+            off += n;
+        }
+        return new Blob(codes, HashEngine.current().hash(data), data.length);
+    }
+
+    /** Returns the hashcode a blob of FILE would have, without saving
+     * anything. Large files are hashed through memory-mapped windows. */
+    public static String hashFile(File file) {
+        if (file.length() < largeFileThreshold()) {
+            return HashEngine.current().hash(
+                    Utils.readContentsAsString(file));
+        }
+        MessageDigest md = HashEngine.current().digest();
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long size = in.size();
+            for (long pos = 0; pos < size; pos += WINDOW) {
+                md.update(in.map(FileChannel.MapMode.READ_ONLY, pos,
+                        Math.min(WINDOW, size - pos)));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Could not read %s: %s", file.getName(),
+                    excp.getMessage());
+        }
+        return HashEngine.current().finish(md);
+    }
+
+    /** Returns the size in bytes from which files take the large-file path,
+     * as set by the core.largeFileThreshold config key. */
+    static long largeFileThreshold() {
+        return Config.getLong(Config.LARGE_FILE_THRESHOLD,
+                DEFAULT_LARGE_FILE_THRESHOLD);
+    }
+
+    /** Return the contents of the blob. Chunked blobs are reassembled in
+     * memory; use writeTo to restore a file. */
     public String getContents() {
-        return this.contents;
+        if (this.chunks == null) {
+            return this.contents;
+        }
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (String code : this.chunks) {
+            result.writeBytes(chunkContents(code));
+        }
+        return new String(result.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Returns the hashcodes of this blob's chunks, or null if the blob is
+     * not chunked. */
+    public ArrayList<String> getChunks() {
+        return this.chunks;
+    }
+
+    /** Returns the length of the blob's contents in bytes. */
+    public long size() {
+        if (this.chunks == null) {
+            return this.contents.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return this.size;
+    }
+
+    /** Write the contents of the blob to FILE. The loose chunks of a large
+     * blob are transferred in order from the chunks directory by the
+     * operating system, without passing through the heap; packed ones are
+     * copied from their pack. */
+    public void writeTo(File file) {
+        if (this.chunks == null) {
+            Utils.writeContents(file, this.contents);
+            return;
+        }
+        try (FileChannel out = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (String code : this.chunks) {
+                writeChunk(code, out);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Could not write %s: %s", file.getName(),
+                    excp.getMessage());
+        }
+    }
+
+    /** Write the contents of the blob to OUT. A chunked blob is copied a
+     * chunk at a time, so it is never held in memory whole. */
+    public void writeTo(OutputStream out) throws IOException {
+        if (this.chunks == null) {
+            out.write(this.contents.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        for (String code : this.chunks) {
+            out.write(chunkContents(code));
+        }
     }
 
-    /** Write the commit to a file named by the blob's hashcode in the blobs
-     * directory.*/
+    /** Queue the blob to be written to a file named by its hashcode in the
+     * blobs directory. It is on disk once ObjectWriter.flush returns.*/
     public void saveBlob() {
-        File newBlob = Utils.join(Repo.BLOBS_DIR, this.code());
-        Utils.writeObject(newBlob, this);
+        ObjectWriter.write(Repo.BLOBS_DIR, this.code(), this);
     }
 
     /** Returns the hashcode of the current blob. */
     public String code() {
-        return Utils.sha1(this.contents);
+        if (this.chunks != null) {
+            return this.hash;
+        }
+        return HashEngine.current().hash(this.contents);
+    }
+
+    /** Append chunk CODE, which must exist, to OUT. A loose chunk is
+     * transferred by the operating system; a packed one, or one packed
+     * while being opened, is copied from its pack. */
+    private static void writeChunk(String code, FileChannel out)
+            throws IOException {
+        File f = ObjectStore.find(Repo.CHUNKS_DIR, code);
+        if (f != null && transfer(f, out)) {
+            return;
+        }
+        ByteBuffer src = ByteBuffer.wrap(chunkContents(code));
+        while (src.hasRemaining()) {
+            out.write(src);
+        }
+    }
+
+    /** Append the file F to OUT by the operating system. Returns false,
+     * having appended nothing, if F is gone, as when it has been packed. */
+    private static boolean transfer(File f, FileChannel out)
+            throws IOException {
+        try (FileChannel in = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            long size = in.size();
+            for (long pos = 0; pos < size; ) {
+                pos += in.transferTo(pos, size - pos, out);
+            }
+            return true;
+        } catch (NoSuchFileException excp) {
+            return false;
+        }
+    }
+
+    /** Returns the bytes of chunk CODE, loose or packed, which must
+     * exist. */
+    private static byte[] chunkContents(String code) {
+        byte[] result = ObjectStore.readContents(Repo.CHUNKS_DIR, code);
+        if (result == null) {
+            throw Utils.error("Missing chunk %s.", code);
+        }
+        return result;
+    }
+
+    /** Queue the bytes of CHUNK to be saved as a chunk unless it is already
+     * stored, and return its hashcode. A loose chunk already stored is
+     * freshened, so that prune keeps it for the blob about to list it. */
+    private static String saveChunk(ByteBuffer chunk) {
+        String code = HashEngine.current().hash(chunk);
+        if (!ObjectStore.contains(Repo.CHUNKS_DIR, code)) {
+            byte[] bytes = new byte[chunk.remaining()];
+            chunk.duplicate().get(bytes);
+            ObjectWriter.write(Repo.CHUNKS_DIR, code, bytes);
+        } else {
+            File f = ObjectStore.locate(Repo.CHUNKS_DIR, code);
+            if (f != null) {
+                f.setLastModified(System.currentTimeMillis());
+            }
+        }
+        return code;
     }
 
 }
@@ -0,0 +1,65 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/** A Bloom filter of strings. It never reports a member as absent, and
+ * reports a non-member as present with probability about 1% at the sizing
+ * used here (ten bits per element, seven probes).
+ *
+ * @author Nitin Nazeer
+ */
+public class BloomFilter implements Serializable {
+
+    /** Fixed so that objects written by other builds stay readable. */
+    private static final long serialVersionUID = 1L;
+
+    /** Bits allotted per element. */
+    static final int BITS_PER_ELEMENT = 10;
+
+    /** Number of probes per element. */
+    static final int PROBES = 7;
+
+    /** The bit array. */
+    private long[] bits;
+
+    /** A filter holding ELEMENTS. */
+    public BloomFilter(Collection<String> elements) {
+        int words = Math.max(1,
+                (elements.size() * BITS_PER_ELEMENT + 63) / 64);
+        this.bits = new long[words];
+        for (String element : elements) {
+            long h = hash(element);
+            int h1 = (int) h, h2 = (int) (h >>> 32);
+            for (int i = 0; i < PROBES; i += 1) {
+                int bit = Math.floorMod(h1 + i * h2, words * 64);
+                this.bits[bit >>> 6] |= 1L << bit;
+            }
+        }
+    }
+
+    /** Returns false if ELEMENT is certainly not in the filter. */
+    public boolean mightContain(String element) {
+        long h = hash(element);
+        int h1 = (int) h, h2 = (int) (h >>> 32);
+        int size = this.bits.length * 64;
+        for (int i = 0; i < PROBES; i += 1) {
+            int bit = Math.floorMod(h1 + i * h2, size);
+            if ((this.bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the 64-bit FNV-1a hash of the UTF-8 bytes of S. */
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,65 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/** Content-defined chunking in the style of FastCDC. Cut points are chosen
+ * by a rolling gear hash of the bytes themselves, so inserting or deleting
+ * bytes in a large file only changes the chunks around the edit.
+ *
+ * @author Nitin Nazeer
+ */
+public class Chunker {
+
+    /** Smallest chunk cut, except at the end of a file. */
+    static final int MIN_SIZE = 16 * 1024;
+
+    /** Size around which chunks are cut. */
+    static final int AVG_SIZE = 64 * 1024;
+
+    /** Largest chunk ever cut. */
+    static final int MAX_SIZE = 256 * 1024;
+
+    /** Stricter mask used below AVG_SIZE (two more bits than average). */
+    private static final long MASK_SMALL = 0xFFFFC00000000000L;
+
+    /** Looser mask used past AVG_SIZE (two fewer bits than average). */
+    private static final long MASK_LARGE = 0xFFFC000000000000L;
+
+    /** Random values per byte for the gear hash. The seed is fixed so that
+     * the same contents always split the same way. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x6769746c6574L);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** Returns the length of the chunk that starts at index OFF of DATA,
+     * where LEN bytes are available. LEN must be at least MAX_SIZE unless
+     * the bytes run up to the end of the file. */
+    static int cut(ByteBuffer data, int off, int len) {
+        if (len <= MIN_SIZE) {
+            return len;
+        }
+        int end = Math.min(len, MAX_SIZE);
+        int normal = Math.min(end, AVG_SIZE);
+        long fp = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            fp = (fp << 1) + GEAR[data.get(off + i) & 0xff];
+            if ((fp & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i += 1) {
+            fp = (fp << 1) + GEAR[data.get(off + i) & 0xff];
+            if ((fp & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+}
@@ -1,12 +1,12 @@
 package gitlet;
 
-import java.io.File;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.time.Month;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collection;
 import java.util.HashMap;
 
 /** The Commit class representing a gitlet commit object.
@@ -14,6 +14,11 @@ import java.util.HashMap;
  */
 public class Commit implements Serializable {
 
+    /** The value computed for the original class, kept so that objects
+     * written before changedPaths were added stay readable, with those fields
+     * null. */
+    private static final long serialVersionUID = 3089134599394777155L;
+
     /** The commit message. */
     private String message;
 
@@ -28,6 +33,10 @@ public class Commit implements Serializable {
     /** The hashcode of the parent commit. */
     private String parent;
 
+    /** A filter of the paths this commit added, changed or removed relative
+     * to its parent, or null if they were not recorded. */
+    private BloomFilter changedPaths;
+
     /** Create a commit w/ message and parent. Initialize timestamp and tracked
      * files.
      *
@@ -54,6 +63,23 @@ public class Commit implements Serializable {
         this.tracked = (HashMap<String, String>) givenHead.tracked.clone();
     }
 
+    /** Create a commit that is a copy of head made at a given time, as
+     * when importing history. A null head gives no tracked files.
+     *
+     * @param givenMessage the commit message.
+     * @param givenParent the hashcode of the current commit's parent.
+     * @param givenHead the head to make a copy of, or null.
+     * @param givenTime the time the commit was made. */
+    @SuppressWarnings("unchecked")
+    public Commit(String givenMessage, String givenParent, Commit givenHead,
+                  ZonedDateTime givenTime) {
+        this.message = givenMessage;
+        this.parent = givenParent;
+        this.timestamp = givenTime;
+        this.tracked = givenHead == null ? new HashMap<String, String>()
+                : (HashMap<String, String>) givenHead.tracked.clone();
+    }
+
     /** The initial commit. */
     public Commit() {
         this.message = "initial commit";
@@ -67,11 +93,27 @@ public class Commit implements Serializable {
         return this.tracked;
     }
 
-    /** Write the commit to a file named by the commit's hashcode in the commits
-     * directory. */
+    /** Record PATHS as the paths this commit changes relative to its
+     * parent. Must be called before the commit is saved.
+     *
+     * @param paths the added, modified and removed filenames. */
+    public void setChangedPaths(Collection<String> paths) {
+        this.changedPaths = new BloomFilter(paths);
+    }
+
+    /** Returns false only if this commit certainly left FILENAME as its
+     * parent had it.
+     *
+     * @param filename the path to test. */
+    public boolean mightHaveChanged(String filename) {
+        return this.changedPaths == null
+                || this.changedPaths.mightContain(filename);
+    }
+
+    /** Queue the commit to be written to a file named by its hashcode in the
+     * commits directory. It is on disk once ObjectWriter.flush returns. */
     public void saveCommit() {
-        File newCommit = Utils.join(Repo.COMMIT_DIR, this.code());
-        Utils.writeObject(newCommit, this);
+        ObjectWriter.write(Repo.COMMIT_DIR, this.code(), this);
     }
 
     /** For this commit, get the associated blob of a given filename. If the
@@ -83,11 +125,7 @@ public class Commit implements Serializable {
         if (blobCode == null) {
             return null;
         }
-        File f = Utils.join(Repo.BLOBS_DIR, blobCode);
-        if (f.exists()) {
-            return Utils.readObject(f, Blob.class);
-        }
-        return null;
+        return Blob.read(blobCode);
     }
 
     /** Returns the commit message. */
@@ -107,6 +145,12 @@ public class Commit implements Serializable {
         return this.timestamp.format(formatter);
     }
 
+    /** Returns the hashcode of the parent commit, or null for the initial
+     * commit. */
+    public String getParentCode() {
+        return this.parent;
+    }
+
     /** Returns the parent commit of the current commit. */
     public Commit getParent() {
         if (this.parent == null) {
@@ -122,12 +166,11 @@ public class Commit implements Serializable {
         if (code.equals(null)) {
             return null;
         }
-        File f = Utils.join(Repo.COMMIT_DIR, code);
-        if (f.exists()) {
-            return Utils.readObject(f, Commit.class);
+        Commit result = ObjectStore.read(Repo.COMMIT_DIR, code, Commit.class);
+        if (result == null) {
+            throw Utils.error("Commit %s not found.", code);
         }
-        System.out.println("commit " + code + " not found.");
-        return null;
+        return result;
     }
 
     /** Returns the Java Epoch. */
@@ -144,7 +187,7 @@ public class Commit implements Serializable {
 
     /** Returns the hashcode of the current commit. */
     public String code() {
-        return Utils.sha1(this.message + this.parent
+        return HashEngine.current().hash(this.message + this.parent
                 + this.getTimestampRepr());
     }
 
@@ -0,0 +1,71 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashMap;
+
+/** Repository settings, kept as a serialized map in the .gitlet directory.
+ * Unset keys fall back to the defaults given by callers.
+ *
+ * @author Nitin Nazeer
+ */
+public class Config {
+
+    /** The file object repr of the config file. */
+    static final File CONFIG_FILE = Utils.join(Repo.GITLET_DIR, "config");
+
+    /** Size in bytes from which files are chunked, hashed through memory
+     * maps and restored without copying through the heap. */
+    static final String LARGE_FILE_THRESHOLD = "core.largeFileThreshold";
+
+    /** The settings, loaded on first use. Never changed once published;
+     * set replaces the whole map. */
+    private static volatile HashMap<String, String> settings;
+
+    /** Returns the value of KEY, or DEFAULTVALUE if it is not set. */
+    static String get(String key, String defaultValue) {
+        String result = load().get(key);
+        return result == null ? defaultValue : result;
+    }
+
+    /** Returns the value of KEY as a number, or DEFAULTVALUE if it is not
+     * set. */
+    static long getLong(String key, long defaultValue) {
+        String result = load().get(key);
+        if (result == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(result);
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Bad value for %s: %s", key, result);
+        }
+    }
+
+    /** Set KEY to VALUE and save the settings. */
+    static synchronized void set(String key, String value) {
+        HashMap<String, String> result = new HashMap<String, String>(load());
+        result.put(key, value);
+        Utils.writeObject(CONFIG_FILE, result);
+        settings = result;
+    }
+
+    /** Returns the settings, reading them the first time. */
+    @SuppressWarnings("unchecked")
+    private static HashMap<String, String> load() {
+        HashMap<String, String> result = settings;
+        if (result == null) {
+            synchronized (Config.class) {
+                result = settings;
+                if (result == null) {
+                    if (CONFIG_FILE.isFile()) {
+                        result = Utils.readObject(CONFIG_FILE, HashMap.class);
+                    } else {
+                        result = new HashMap<String, String>();
+                    }
+                    settings = result;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,391 @@
+package gitlet;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/** A line-based diff engine using Myers' O(ND) algorithm in its linear
+ * space (middle snake) refinement. Edits are reported in order to a
+ * Listener, so callers can stream hunks without holding an edit script.
+ *
+ * @author Nitin Nazeer
+ */
+public class Diff {
+
+    /** Receives the edits of a diff in order of increasing line number. */
+    interface Listener {
+        /** Line A of the old side is kept as line B of the new side. */
+        void equal(int a, int b);
+
+        /** Line A of the old side is deleted. */
+        void delete(int a);
+
+        /** Line B of the new side is inserted. */
+        void insert(int b);
+    }
+
+    /** The old lines, each replaced by a small integer id. */
+    private final int[] oldIds;
+
+    /** The new lines, each replaced by a small integer id. */
+    private final int[] newIds;
+
+    /** Forward furthest-reaching x per diagonal. */
+    private final int[] vf;
+
+    /** Backward furthest-reaching x per diagonal. */
+    private final int[] vb;
+
+    /** Where edits are sent. */
+    private final Listener out;
+
+    /** The middle snake found by the last call to middleSnake: start x,
+     * start y, end x, end y, all relative to the subproblem. */
+    private final int[] snake = new int[4];
+
+    /** Set up a diff of lines A against lines B reporting to OUT. */
+    private Diff(String[] a, String[] b, Listener out) {
+        HashMap<String, Integer> ids = new HashMap<String, Integer>();
+        this.oldIds = intern(a, ids);
+        this.newIds = intern(b, ids);
+        int max = (a.length + b.length + 1) / 2 + 2;
+        this.vf = new int[2 * max + 1];
+        this.vb = new int[2 * max + 1];
+        this.out = out;
+    }
+
+    /** Report the edits turning lines A into lines B to OUT. */
+    static void diff(String[] a, String[] b, Listener out) {
+        new Diff(a, b, out).compare(0, a.length, 0, b.length);
+    }
+
+    /** Split CONTENTS into lines, without their terminators. A trailing
+     * newline does not produce an empty last line. */
+    static String[] lines(String contents) {
+        if (contents == null || contents.isEmpty()) {
+            return new String[0];
+        }
+        ArrayList<String> result = new ArrayList<String>();
+        int start = 0;
+        for (int i = 0; i < contents.length(); i += 1) {
+            if (contents.charAt(i) == '\n') {
+                result.add(contents.substring(start, i));
+                start = i + 1;
+            }
+        }
+        if (start < contents.length()) {
+            result.add(contents.substring(start));
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    /** Map each line of LINES to an id shared through IDS. */
+    private static int[] intern(String[] lines,
+                                HashMap<String, Integer> ids) {
+        int[] result = new int[lines.length];
+        for (int i = 0; i < lines.length; i += 1) {
+            Integer id = ids.get(lines[i]);
+            if (id == null) {
+                id = ids.size();
+                ids.put(lines[i], id);
+            }
+            result[i] = id;
+        }
+        return result;
+    }
+
+    /** Report the edits for old lines [ALO, AHI) against new lines
+     * [BLO, BHI). */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        int[] a = this.oldIds, b = this.newIds;
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            this.out.equal(aLo, bLo);
+            aLo += 1;
+            bLo += 1;
+        }
+        int aEnd = aHi, bEnd = bHi;
+        while (aEnd > aLo && bEnd > bLo && a[aEnd - 1] == b[bEnd - 1]) {
+            aEnd -= 1;
+            bEnd -= 1;
+        }
+        if (aLo == aEnd) {
+            for (int j = bLo; j < bEnd; j += 1) {
+                this.out.insert(j);
+            }
+        } else if (bLo == bEnd) {
+            for (int i = aLo; i < aEnd; i += 1) {
+                this.out.delete(i);
+            }
+        } else {
+            middleSnake(aLo, aEnd, bLo, bEnd);
+            int x = aLo + this.snake[0], y = bLo + this.snake[1];
+            int u = aLo + this.snake[2], v = bLo + this.snake[3];
+            compare(aLo, x, bLo, y);
+            for (int i = x, j = y; i < u; i += 1, j += 1) {
+                this.out.equal(i, j);
+            }
+            compare(u, aEnd, v, bEnd);
+        }
+        for (int i = aEnd, j = bEnd; i < aHi; i += 1, j += 1) {
+            this.out.equal(i, j);
+        }
+    }
+
+    /** Find the middle snake of an optimal edit path for old lines
+     * [ALO, AHI) against new lines [BLO, BHI), storing it in snake. */
+    private void middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int[] a = this.oldIds, b = this.newIds, f = this.vf, r = this.vb;
+        int n = aHi - aLo, m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int off = f.length / 2;
+        f[off + 1] = 0;
+        r[off + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && f[off + k - 1] < f[off + k + 1])) {
+                    x = f[off + k + 1];
+                } else {
+                    x = f[off + k - 1] + 1;
+                }
+                int y = x - k, x0 = x, y0 = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                f[off + k] = x;
+                int kr = delta - k;
+                if (odd && kr >= -(d - 1) && kr <= d - 1
+                        && x + r[off + kr] >= n) {
+                    setSnake(x0, y0, x, y);
+                    return;
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && r[off + k - 1] < r[off + k + 1])) {
+                    x = r[off + k + 1];
+                } else {
+                    x = r[off + k - 1] + 1;
+                }
+                int y = x - k, x0 = x, y0 = y;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                r[off + k] = x;
+                int kf = delta - k;
+                if (!odd && kf >= -d && kf <= d && x + f[off + kf] >= n) {
+                    setSnake(n - x, m - y, n - x0, m - y0);
+                    return;
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Record the snake from (X, Y) to (U, V). */
+    private void setSnake(int x, int y, int u, int v) {
+        this.snake[0] = x;
+        this.snake[1] = y;
+        this.snake[2] = u;
+        this.snake[3] = v;
+    }
+
+    /** A file that differs between two sides of a diff. */
+    public static class Entry {
+        /** The name of the file. */
+        private final String filename;
+
+        /** The hashcode of the old blob, or null if the file is new. */
+        private final String oldCode;
+
+        /** The hashcode of the new blob, or null if the file is gone. */
+        private final String newCode;
+
+        /** The working file the new side is read from, or null if it is
+         * read from the new blob. */
+        private final File working;
+
+        /** FILENAME changed from blob OLDCODE to blob NEWCODE, either of
+         * which may be null, with the new contents in WORKING if not
+         * null. */
+        Entry(String filename, String oldCode, String newCode, File working) {
+            this.filename = filename;
+            this.oldCode = oldCode;
+            this.newCode = newCode;
+            this.working = working;
+        }
+
+        /** Returns the name of the file. */
+        public String getFilename() {
+            return this.filename;
+        }
+
+        /** Returns the hashcode of the old blob, or null if the file is
+         * new. */
+        public String getOldCode() {
+            return this.oldCode;
+        }
+
+        /** Returns the hashcode of the new blob, or null if the file is
+         * gone. */
+        public String getNewCode() {
+            return this.newCode;
+        }
+
+        /** Returns the old lines, read from the object store. */
+        public String[] oldLines() {
+            return this.oldCode == null ? new String[0]
+                    : lines(Blob.read(this.oldCode).getContents());
+        }
+
+        /** Returns the new lines, read from the working tree or the object
+         * store. */
+        public String[] newLines() {
+            if (this.newCode == null) {
+                return new String[0];
+            } else if (this.working != null) {
+                return lines(Utils.readContentsAsString(this.working));
+            }
+            return lines(Blob.read(this.newCode).getContents());
+        }
+
+        /** Print this entry to OUT as a unified diff. */
+        public void print(PrintStream out) {
+            String[] oldLines = oldLines();
+            String[] newLines = newLines();
+            out.println("diff --git a/" + this.filename + " b/"
+                    + this.filename);
+            out.println("--- " + (this.oldCode == null ? "/dev/null"
+                    : "a/" + this.filename));
+            out.println("+++ " + (this.newCode == null ? "/dev/null"
+                    : "b/" + this.filename));
+            HunkPrinter printer = new HunkPrinter(oldLines, newLines, out);
+            diff(oldLines, newLines, printer);
+            printer.finish();
+        }
+    }
+
+    /** A Listener that groups edits into unified-format hunks with a few
+     * lines of context and prints each hunk as soon as it is complete. */
+    static class HunkPrinter implements Listener {
+
+        /** Lines of context around each change. */
+        static final int CONTEXT = 3;
+
+        /** The old lines. */
+        private final String[] oldLines;
+
+        /** The new lines. */
+        private final String[] newLines;
+
+        /** Where hunks go. */
+        private final PrintStream print;
+
+        /** Equal lines seen since the last hunk, at most CONTEXT. */
+        private final ArrayDeque<int[]> leading = new ArrayDeque<int[]>();
+
+        /** Edits of the hunk being built, as {kind, old line, new line}. */
+        private final ArrayList<int[]> hunk = new ArrayList<int[]>();
+
+        /** Number of equal lines at the end of hunk. */
+        private int trailing;
+
+        /** @param a the old lines.
+         * @param b the new lines.
+         * @param out where hunks are printed. */
+        HunkPrinter(String[] a, String[] b, PrintStream out) {
+            this.oldLines = a;
+            this.newLines = b;
+            this.print = out;
+        }
+
+        @Override
+        public void equal(int a, int b) {
+            if (this.hunk.isEmpty()) {
+                this.leading.addLast(new int[] {' ', a, b});
+                if (this.leading.size() > CONTEXT) {
+                    this.leading.removeFirst();
+                }
+                return;
+            }
+            this.hunk.add(new int[] {' ', a, b});
+            this.trailing += 1;
+            if (this.trailing > 2 * CONTEXT) {
+                int size = this.hunk.size();
+                this.leading.addAll(this.hunk.subList(size - CONTEXT, size));
+                this.hunk.subList(size - this.trailing + CONTEXT,
+                        size).clear();
+                flush();
+            }
+        }
+
+        @Override
+        public void delete(int a) {
+            change(new int[] {'-', a, -1});
+        }
+
+        @Override
+        public void insert(int b) {
+            change(new int[] {'+', -1, b});
+        }
+
+        /** Print whatever hunk is still pending. Call once the diff is
+         * done. */
+        void finish() {
+            if (!this.hunk.isEmpty()) {
+                int size = this.hunk.size();
+                this.hunk.subList(size - this.trailing
+                        + Math.min(this.trailing, CONTEXT), size).clear();
+                flush();
+            }
+        }
+
+        /** Add the deletion or insertion OP to the current hunk. */
+        private void change(int[] op) {
+            if (this.hunk.isEmpty()) {
+                this.hunk.addAll(this.leading);
+                this.leading.clear();
+            }
+            this.hunk.add(op);
+            this.trailing = 0;
+        }
+
+        /** Print the current hunk and start a new one. */
+        private void flush() {
+            int aStart = -1, bStart = -1, aCount = 0, bCount = 0;
+            int aNext = 0, bNext = 0;
+            for (int[] op : this.hunk) {
+                if (op[1] >= 0) {
+                    aStart = aStart < 0 ? op[1] : aStart;
+                    aCount += 1;
+                    aNext = op[1] + 1;
+                }
+                if (op[2] >= 0) {
+                    bStart = bStart < 0 ? op[2] : bStart;
+                    bCount += 1;
+                    bNext = op[2] + 1;
+                }
+            }
+            this.print.printf("@@ -%s +%s @@%n",
+                    range(aStart < 0 ? aNext : aStart + 1, aCount),
+                    range(bStart < 0 ? bNext : bStart + 1, bCount));
+            for (int[] op : this.hunk) {
+                String line = op[0] == '+' ? this.newLines[op[2]]
+                        : this.oldLines[op[1]];
+                this.print.println((char) op[0] + line);
+            }
+            this.hunk.clear();
+            this.trailing = 0;
+        }
+
+        /** Return the unified-format range for COUNT lines at START. */
+        private static String range(int start, int count) {
+            return count == 1 ? Integer.toString(start) : start + "," + count;
+        }
+    }
+}
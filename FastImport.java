@@ -0,0 +1,385 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.function.Consumer;
+
+/** Bulk import of history from a text stream, in a subset of the format
+ * read by git fast-import:
+ *
+ *   blob                           commit BRANCH
+ *   mark :N                        mark :N
+ *   data COUNT                     committer NAME <EMAIL> SECONDS ZONE
+ *   COUNT raw bytes                data COUNT
+ *                                  COUNT bytes of message
+ *   reset BRANCH                   from :N | HASHCODE
+ *   from :N | HASHCODE             M MODE :N | HASHCODE | inline PATH
+ *                                  D PATH
+ *
+ * plus checkpoint, progress, feature and done. Branch names may carry a
+ * refs/heads/ prefix, and author lines and file modes are ignored. A commit
+ * without a from line continues its branch, or starts at this
+ * repository's initial commit if the branch is new.
+ *
+ * Objects are buffered in memory and written BATCH_BYTES at a time through
+ * ObjectWriter, blobs before commits. Branches are saved at each
+ * checkpoint and at the end, once every object they reach has been
+ * written, so an import stopped after a checkpoint keeps what came before
+ * it. Nothing is staged.
+ * Since a commit's hashcode covers its parent, message and time but not
+ * its files, a commit that repeats all three of an earlier one with other
+ * files is rejected rather than dropped.
+ *
+ * @author Nitin Nazeer
+ */
+public class FastImport {
+
+    /** Buffered objects are written once they reach this many bytes. */
+    static final long BATCH_BYTES = 32L * 1024 * 1024;
+
+    /** Prefix of full branch names in the stream. */
+    static final String REFS_HEADS = "refs/heads/";
+
+    /** The stream being imported. */
+    private final InputStream in;
+
+    /** Where progress messages and the summary are printed. */
+    private final PrintStream out;
+
+    /** The branches before the import. */
+    private final RefStore refs;
+
+    /** Saves the branches changed so far. */
+    private final Consumer<HashMap<String, String>> save;
+
+    /** The branches changed by the import.
+     * Keys: branch names
+     * Values: hashcode of the tip commit, or null if deleted. */
+    private final HashMap<String, String> branches =
+            new HashMap<String, String>();
+
+    /** The last imported commit of each branch, once read. */
+    private final HashMap<String, Commit> tips = new HashMap<String, Commit>();
+
+    /** The hashcode of each mark. */
+    private final HashMap<String, String> marks =
+            new HashMap<String, String>();
+
+    /** Hashcodes of the objects written or buffered by this import. */
+    private final HashSet<String> written = new HashSet<String>();
+
+    /** Buffered blobs, by hashcode. */
+    private final HashMap<String, Blob> pendingBlobs =
+            new HashMap<String, Blob>();
+
+    /** Buffered commits, by hashcode. */
+    private final HashMap<String, Commit> pendingCommits =
+            new HashMap<String, Commit>();
+
+    /** Bytes buffered in pendingBlobs and pendingCommits. */
+    private long pendingBytes;
+
+    /** The hashcode of the initial commit, once found. */
+    private String root;
+
+    /** The line read ahead by a command that ended at it, or null. */
+    private String peeked;
+
+    /** The number of commits imported. */
+    private int numCommits;
+
+    /** The number of blobs imported. */
+    private int numBlobs;
+
+    /** Bytes of blob data imported. */
+    private long numBytes;
+
+    /** An import of the stream IN on top of the branches in REFS,
+     * printing progress to OUT. At each checkpoint and at the end, SAVE is
+     * given the branches changed so far, with the hashcodes of their new
+     * tips, or null for those deleted. */
+    FastImport(InputStream in, RefStore refs, PrintStream out,
+               Consumer<HashMap<String, String>> save) {
+        this.in = in;
+        this.out = out;
+        this.refs = refs;
+        this.save = save;
+    }
+
+    /** Returns the hashcode of the tip of BRANCH as the import left it, or
+     * null if there is no such branch. */
+    private String branch(String branch) {
+        return this.branches.containsKey(branch) ? this.branches.get(branch)
+                : this.refs.get(branch);
+    }
+
+    /** Import the whole stream, then write every buffered object and save
+     * the branches. */
+    void run() {
+        long start = System.nanoTime();
+        for (String line = nextLine(); line != null; line = nextLine()) {
+            if (line.isEmpty() || line.startsWith("#")
+                    || line.startsWith("feature ")) {
+                continue;
+            } else if (line.equals("blob")) {
+                blob();
+            } else if (line.startsWith("commit ")) {
+                commit(branchName(line.substring("commit ".length())));
+            } else if (line.startsWith("reset ")) {
+                reset(branchName(line.substring("reset ".length())));
+            } else if (line.equals("checkpoint")) {
+                flush();
+                this.save.accept(this.branches);
+            } else if (line.startsWith("progress ")) {
+                this.out.println(line.substring("progress ".length()));
+            } else if (line.equals("done")) {
+                break;
+            } else {
+                throw Utils.error("Unsupported command: %s", line);
+            }
+        }
+        flush();
+        this.save.accept(this.branches);
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        double megabytes = this.numBytes / (1024.0 * 1024.0);
+        this.out.printf("Imported %d commits and %d blobs (%.1f MB) in "
+                + "%.2f s: %.0f commits/s, %.1f MB/s.%n", this.numCommits,
+                this.numBlobs, megabytes, seconds,
+                this.numCommits / seconds, megabytes / seconds);
+    }
+
+    /** Import a blob command. */
+    private void blob() {
+        String mark = optional("mark ");
+        String code = saveBlob(data(nextLine()));
+        if (mark != null) {
+            this.marks.put(mark, code);
+        }
+    }
+
+    /** Import a commit command onto BRANCH. */
+    private void commit(String branch) {
+        String mark = optional("mark ");
+        optional("author ");
+        String committer = optional("committer ");
+        String message = new String(data(nextLine()),
+                StandardCharsets.UTF_8);
+        String from = optional("from ");
+
+        String parentCode = from != null ? resolve(from)
+                : branch(branch) != null ? branch(branch) : root();
+        Commit parent = from == null && this.tips.containsKey(branch)
+                ? this.tips.get(branch) : readCommit(parentCode);
+        ZonedDateTime time = committer == null
+                ? ZonedDateTime.now(ZoneId.systemDefault())
+                : parseTime(committer);
+        Commit next = new Commit(message, parentCode, parent, time);
+
+        ArrayList<String> changed = new ArrayList<String>();
+        for (String line = nextLine(); line != null; line = nextLine()) {
+            if (line.startsWith("M ")) {
+                String[] parts = line.split(" ", 4);
+                String code = parts[2].equals("inline")
+                        ? saveBlob(data(nextLine())) : resolve(parts[2]);
+                next.getTracked().put(parts[3], code);
+                changed.add(parts[3]);
+            } else if (line.startsWith("D ")) {
+                next.getTracked().remove(line.substring(2));
+                changed.add(line.substring(2));
+            } else {
+                this.peeked = line;
+                break;
+            }
+        }
+        next.setChangedPaths(changed);
+
+        String code = next.code();
+        if (this.written.contains(code)
+                || ObjectStore.contains(Repo.COMMIT_DIR, code)) {
+            if (!readCommit(code).getTracked().equals(next.getTracked())) {
+                throw Utils.error("Commit %s on %s has the same parent, message"
+                        + " and time as an earlier commit with different"
+                        + " files.", code.substring(0, 8), branch);
+            }
+        } else {
+            this.written.add(code);
+            this.pendingCommits.put(code, next);
+            this.pendingBytes += 256 + 128L * next.getTracked().size();
+        }
+        this.branches.put(branch, code);
+        this.tips.put(branch, next);
+        if (mark != null) {
+            this.marks.put(mark, code);
+        }
+        this.numCommits += 1;
+        if (this.pendingBytes >= BATCH_BYTES) {
+            flush();
+        }
+    }
+
+    /** Import a reset command of BRANCH. */
+    private void reset(String branch) {
+        String from = optional("from ");
+        this.tips.remove(branch);
+        if (from == null) {
+            this.branches.put(branch, null);
+        } else {
+            this.branches.put(branch, resolve(from));
+        }
+    }
+
+    /** Buffer a blob of DATA unless it is already stored, and return its
+     * hashcode. */
+    private String saveBlob(byte[] data) {
+        Blob blob = Blob.fromBytes(data);
+        String code = blob.code();
+        this.numBlobs += 1;
+        this.numBytes += data.length;
+        if (this.written.add(code)
+                && !ObjectStore.contains(Repo.BLOBS_DIR, code)) {
+            this.pendingBlobs.put(code, blob);
+            this.pendingBytes += data.length;
+            if (this.pendingBytes >= BATCH_BYTES) {
+                flush();
+            }
+        }
+        return code;
+    }
+
+    /** Write the buffered objects through ObjectWriter, every blob and
+     * chunk, then every commit, and wait until they are on disk. */
+    private void flush() {
+        for (String code : this.pendingBlobs.keySet()) {
+            ObjectWriter.write(Repo.BLOBS_DIR, code,
+                    this.pendingBlobs.get(code));
+        }
+        ObjectWriter.flush();
+        for (String code : this.pendingCommits.keySet()) {
+            ObjectWriter.write(Repo.COMMIT_DIR, code,
+                    this.pendingCommits.get(code));
+        }
+        ObjectWriter.flush();
+        this.pendingBlobs.clear();
+        this.pendingCommits.clear();
+        this.pendingBytes = 0;
+    }
+
+    /** Returns the commit CODE, whether buffered or stored. */
+    private Commit readCommit(String code) {
+        Commit result = this.pendingCommits.get(code);
+        if (result == null) {
+            result = ObjectStore.read(Repo.COMMIT_DIR, code, Commit.class);
+        }
+        if (result == null) {
+            throw Utils.error("No commit %s.", code);
+        }
+        return result;
+    }
+
+    /** Returns the hashcode of the initial commit of this repository. */
+    private String root() {
+        if (this.root == null) {
+            String code = Utils.readObject(Repo.HEAD_FILE, String.class);
+            for (Commit c = readCommit(code); c.getParentCode() != null;
+                 c = readCommit(code)) {
+                code = c.getParentCode();
+            }
+            this.root = code;
+        }
+        return this.root;
+    }
+
+    /** Returns the hashcode named by REF: a mark, or a hashcode. */
+    private String resolve(String ref) {
+        if (ref.startsWith(":")) {
+            String result = this.marks.get(ref);
+            if (result == null) {
+                throw Utils.error("Undefined mark %s.", ref);
+            }
+            return result;
+        }
+        return ref;
+    }
+
+    /** Returns the time of the committer line LINE. */
+    private static ZonedDateTime parseTime(String line) {
+        String[] parts = line.split(" ");
+        long seconds = Long.parseLong(parts[parts.length - 2]);
+        ZoneOffset zone = ZoneOffset.of(parts[parts.length - 1]);
+        return Instant.ofEpochSecond(seconds).atZone(zone);
+    }
+
+    /** Returns the branch named NAME in the stream. */
+    private static String branchName(String name) {
+        return name.startsWith(REFS_HEADS)
+                ? name.substring(REFS_HEADS.length()) : name;
+    }
+
+    /** Returns the rest of the next line if it starts with PREFIX, and
+     * null otherwise, leaving the line to be read again. */
+    private String optional(String prefix) {
+        String line = nextLine();
+        if (line != null && line.startsWith(prefix)) {
+            return line.substring(prefix.length());
+        }
+        this.peeked = line;
+        return null;
+    }
+
+    /** Returns the bytes of the data command LINE, skipping the optional
+     * newline after them. */
+    private byte[] data(String line) {
+        if (line == null || !line.startsWith("data ")) {
+            throw Utils.error("Expected data, got: %s", line);
+        }
+        int count = Integer.parseInt(line.substring("data ".length()));
+        try {
+            byte[] result = this.in.readNBytes(count);
+            if (result.length < count) {
+                throw Utils.error("Stream ended after %d of %d bytes of data.",
+                        result.length, count);
+            }
+            this.in.mark(1);
+            if (this.in.read() != '\n') {
+                this.in.reset();
+            }
+            return result;
+        } catch (IOException excp) {
+            throw Utils.error("Could not read data: %s", excp.getMessage());
+        }
+    }
+
+    /** Returns the next line of the stream without its newline, or null at
+     * the end. */
+    private String nextLine() {
+        if (this.peeked != null) {
+            String result = this.peeked;
+            this.peeked = null;
+            return result;
+        }
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        try {
+            int b = this.in.read();
+            if (b < 0) {
+                return null;
+            }
+            for (; b >= 0 && b != '\n'; b = this.in.read()) {
+                line.write(b);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Could not read stream: %s",
+                    excp.getMessage());
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+}
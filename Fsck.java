@@ -0,0 +1,261 @@
+package gitlet;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Verification of the object store. Every commit, blob and chunk is read
+ * and re-hashed by a pool with one thread per core, which also records what
+ * each object refers to. The references are then checked against the
+ * objects found: an object referred to but absent is missing, and one that
+ * nothing reaches is dangling. A chunked blob is checked by its chunk list
+ * and sizes, since each chunk is re-hashed on its own.
+ *
+ * @author Nitin Nazeer
+ */
+public class Fsck {
+
+    /** Milliseconds between progress reports. */
+    static final long PROGRESS_INTERVAL = 500;
+
+    /** The .gitlet directory checked. */
+    private final File gitletDir;
+
+    /** Where progress is reported, or null. */
+    private final PrintStream progress;
+
+    /** Problems found, one line each, e.g. "missing blob CODE". */
+    private final Set<String> problems = ConcurrentHashMap.newKeySet();
+
+    /** The parent of each commit read, or "" for none. */
+    private final ConcurrentHashMap<String, String> parents =
+            new ConcurrentHashMap<String, String>();
+
+    /** Blobs referred to by some commit. */
+    private final Set<String> usedBlobs = ConcurrentHashMap.newKeySet();
+
+    /** Chunks referred to by some blob. */
+    private final Set<String> usedChunks = ConcurrentHashMap.newKeySet();
+
+    /** Objects checked so far. */
+    private final AtomicInteger checked = new AtomicInteger();
+
+    /** Bytes read so far. */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /** A check of the repository at GITLETDIR, reporting progress to
+     * PROGRESS unless it is null. */
+    Fsck(File gitletDir, PrintStream progress) {
+        this.gitletDir = gitletDir;
+        this.progress = progress;
+    }
+
+    /** Check every object, reachable from BRANCHES or not, and return the
+     * problems found in sorted order. */
+    List<String> run(Collection<String> branches) {
+        File commitDir = Remote.dir(this.gitletDir, Remote.COMMIT);
+        File blobDir = Remote.dir(this.gitletDir, Remote.BLOB);
+        File chunkDir = Remote.dir(this.gitletDir, Remote.CHUNK);
+        List<String> commits = ObjectStore.list(commitDir);
+        List<String> blobs = ObjectStore.list(blobDir);
+        List<String> chunks = ObjectStore.list(chunkDir);
+        int total = commits.size() + blobs.size() + chunks.size();
+
+        HashEngine.current();
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        for (String code : commits) {
+            pool.execute(() -> checkCommit(commitDir, code));
+        }
+        for (String code : blobs) {
+            pool.execute(() -> checkBlob(blobDir, chunkDir, code));
+        }
+        for (String code : chunks) {
+            pool.execute(() -> checkChunk(chunkDir, code));
+        }
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(PROGRESS_INTERVAL,
+                    TimeUnit.MILLISECONDS)) {
+                progress(start, total, "\r");
+            }
+        } catch (InterruptedException excp) {
+            throw Utils.error("fsck interrupted.");
+        }
+        progress(start, total, "\n");
+
+        checkConnectivity(branches, new HashSet<String>(commits),
+                new HashSet<String>(blobs), new HashSet<String>(chunks));
+        return new ArrayList<String>(new TreeSet<String>(this.problems));
+    }
+
+    /** Read and re-hash commit CODE in DIR, recording its references. */
+    private void checkCommit(File dir, String code) {
+        Commit commit = read(dir, Commit.class, "commit", code);
+        if (commit != null) {
+            if (!commit.code().equals(code)) {
+                this.problems.add("corrupt commit " + code);
+            }
+            String parent = commit.getParentCode();
+            this.parents.put(code, parent == null ? "" : parent);
+            this.usedBlobs.addAll(commit.getTracked().values());
+        }
+    }
+
+    /** Read and re-hash blob CODE in BLOBDIR, recording its chunks, which
+     * must be in CHUNKDIR and add up to the blob's size. A missing chunk is
+     * reported by the connectivity check, and leaves only the size
+     * unchecked. */
+    private void checkBlob(File blobDir, File chunkDir, String code) {
+        Blob blob = read(blobDir, Blob.class, "blob", code);
+        if (blob == null) {
+            return;
+        }
+        if (blob.getChunks() == null) {
+            if (!blob.code().equals(code)) {
+                this.problems.add("corrupt blob " + code);
+            }
+            return;
+        }
+        this.usedChunks.addAll(blob.getChunks());
+        long size = 0;
+        boolean complete = true;
+        for (String chunk : blob.getChunks()) {
+            long length = ObjectStore.length(chunkDir, chunk);
+            if (length < 0) {
+                complete = false;
+                continue;
+            }
+            size += length;
+        }
+        if (!blob.code().equals(code)
+                || complete && size != blob.size()) {
+            this.problems.add("corrupt blob " + code);
+        }
+    }
+
+    /** Returns true if an alternate holds the object of tag TAG and
+     * hashcode CODE. */
+    private boolean borrowed(byte tag, String code) {
+        File dir = Remote.dir(this.gitletDir, tag);
+        for (File alternate : Alternates.of(dir)) {
+            if (ObjectStore.containsLocal(alternate, code)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Re-hash chunk CODE in DIR, loose or packed. */
+    private void checkChunk(File dir, String code) {
+        try {
+            byte[] contents = ObjectStore.readContents(dir, code);
+            this.bytes.addAndGet(contents.length);
+            if (!HashEngine.current().hash(contents).equals(code)) {
+                this.problems.add("corrupt chunk " + code);
+            }
+        } catch (IllegalArgumentException | NullPointerException
+                 | GitletException excp) {
+            this.problems.add("corrupt chunk " + code);
+        }
+        this.checked.incrementAndGet();
+    }
+
+    /** Returns the object of kind KIND and hashcode CODE in DIR, loose or
+     * packed, read as an EXPECTEDCLASS, or null after recording it as
+     * corrupt. */
+    private <T extends Serializable> T read(File dir,
+            Class<T> expectedClass, String kind, String code) {
+        this.checked.incrementAndGet();
+        try {
+            byte[] contents = ObjectStore.readContents(dir, code);
+            this.bytes.addAndGet(contents.length);
+            return Utils.deserialize(contents, expectedClass);
+        } catch (IllegalArgumentException | NullPointerException
+                 | GitletException excp) {
+            this.problems.add("corrupt " + kind + " " + code);
+            return null;
+        }
+    }
+
+    /** Record missing and dangling objects, given the BRANCHES and the
+     * COMMITS, BLOBS and CHUNKS found. Blobs of a partial clone are not
+     * missing, since they are fetched when needed, and objects borrowed
+     * from an alternate are not missing either, though what they refer to
+     * is left for a check of the alternate itself. */
+    private void checkConnectivity(Collection<String> branches,
+                                   Set<String> commits, Set<String> blobs,
+                                   Set<String> chunks) {
+        HashSet<String> reached = new HashSet<String>();
+        ArrayDeque<String> pending = new ArrayDeque<String>(branches);
+        while (!pending.isEmpty()) {
+            String code = pending.remove();
+            if (!reached.add(code)) {
+                continue;
+            }
+            String parent = this.parents.get(code);
+            if (parent == null && !commits.contains(code)
+                    && !borrowed(Remote.COMMIT, code)) {
+                this.problems.add("missing commit " + code);
+            } else if (parent != null && !parent.isEmpty()) {
+                pending.add(parent);
+            }
+        }
+        for (String code : this.parents.keySet()) {
+            if (!reached.contains(code)) {
+                this.problems.add("dangling commit " + code);
+            }
+        }
+
+        boolean promised = this.gitletDir.equals(Repo.GITLET_DIR)
+                && Promisor.origin() != null;
+        for (String code : this.usedBlobs) {
+            if (!blobs.contains(code) && !promised
+                    && !borrowed(Remote.BLOB, code)) {
+                this.problems.add("missing blob " + code);
+            }
+        }
+        for (String code : blobs) {
+            if (!this.usedBlobs.contains(code)) {
+                this.problems.add("dangling blob " + code);
+            }
+        }
+        for (String code : this.usedChunks) {
+            if (!chunks.contains(code) && !borrowed(Remote.CHUNK, code)) {
+                this.problems.add("missing chunk " + code);
+            }
+        }
+        for (String code : chunks) {
+            if (!this.usedChunks.contains(code)) {
+                this.problems.add("dangling chunk " + code);
+            }
+        }
+    }
+
+    /** Print the progress of a check of TOTAL objects started at START,
+     * ended by END. */
+    private void progress(long start, int total, String end) {
+        if (this.progress == null) {
+            return;
+        }
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        int done = this.checked.get();
+        this.progress.printf("Checking objects: %d%% (%d/%d), %.1f MB/s%s",
+                total == 0 ? 100 : 100L * done / total, done, total,
+                this.bytes.get() / (1024.0 * 1024.0) / seconds, end);
+    }
+}
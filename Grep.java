@@ -0,0 +1,249 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/** A search of the file contents of commits for lines matching a regular
+ * expression. Each distinct blob is scanned once however many commits
+ * track it, on as many threads as there are processors, and only its
+ * matching lines are kept. A large blob is streamed a chunk at a time and
+ * a line at a time, so a scan holds at most a line per thread beyond the
+ * matches; lines longer than MAX_LINE bytes are matched in pieces.
+ *
+ * @author Nitin Nazeer
+ */
+public class Grep {
+
+    /** The longest piece of a line matched at once, in bytes. */
+    static final int MAX_LINE = 64 * 1024;
+
+    /** A line of a file of a commit that matches. */
+    public static class Match {
+        /** The hashcode of the commit. */
+        private final String commit;
+
+        /** The name of the file. */
+        private final String filename;
+
+        /** The line number, from 1. */
+        private final int number;
+
+        /** The text of the line. */
+        private final String text;
+
+        /** Line NUMBER of FILENAME in COMMIT, with TEXT. */
+        Match(String commit, String filename, int number, String text) {
+            this.commit = commit;
+            this.filename = filename;
+            this.number = number;
+            this.text = text;
+        }
+
+        /** Returns the hashcode of the commit. */
+        public String getCommit() {
+            return this.commit;
+        }
+
+        /** Returns the name of the file. */
+        public String getFilename() {
+            return this.filename;
+        }
+
+        /** Returns the line number, from 1. */
+        public int getNumber() {
+            return this.number;
+        }
+
+        /** Returns the text of the line. */
+        public String getText() {
+            return this.text;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s:%s:%d:%s", this.commit.substring(0, 8),
+                    this.filename, this.number, this.text);
+        }
+    }
+
+    /** The pattern searched for. */
+    private final Pattern pattern;
+
+    /** The matching lines of each blob scanned that has any, as
+     * alternating line numbers and texts. */
+    private final ConcurrentHashMap<String, List<Object>> hits =
+            new ConcurrentHashMap<String, List<Object>>();
+
+    /** A search for REGEX. */
+    Grep(String regex) {
+        try {
+            this.pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException excp) {
+            throw Utils.error("Invalid pattern: %s", excp.getDescription());
+        }
+    }
+
+    /** Scan each of the blobs BLOBS, which should be distinct, in
+     * parallel. */
+    void scan(Collection<String> blobs) {
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        try {
+            ArrayList<Future<?>> results = new ArrayList<Future<?>>();
+            for (String code : blobs) {
+                results.add(pool.submit(() -> scan(code)));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (Exception excp) {
+            throw Utils.error("grep failed: %s", excp.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Scan blob CODE, recording its matching lines if there are any. */
+    private void scan(String code) {
+        Blob blob = Blob.read(code);
+        if (blob == null) {
+            throw Utils.error("Blob %s not found.", code);
+        }
+        Lines lines = new Lines(this.pattern.matcher(""));
+        if (blob.getChunks() == null) {
+            String contents = blob.getContents();
+            int start = 0;
+            while (start < contents.length()) {
+                int end = contents.indexOf('\n', start);
+                if (end < 0) {
+                    end = contents.length();
+                }
+                lines.line(contents.substring(start, end));
+                start = end + 1;
+            }
+        } else {
+            try (Lines out = lines) {
+                blob.writeTo(out);
+            } catch (IOException excp) {
+                throw Utils.error("Could not read blob %s: %s", code,
+                        excp.getMessage());
+            }
+        }
+        if (!lines.found.isEmpty()) {
+            this.hits.put(code, lines.found);
+        }
+    }
+
+    /** Returns the matching lines of the files of commit COMMIT, whose
+     * hashcode is CODE, in order of filename and line. Its blobs must have
+     * been scanned. */
+    List<Match> matches(String code, Commit commit) {
+        ArrayList<Match> result = new ArrayList<Match>();
+        for (Map.Entry<String, String> entry
+                 : new TreeMap<String, String>(commit.getTracked())
+                        .entrySet()) {
+            List<Object> found = this.hits.getOrDefault(entry.getValue(),
+                    Collections.emptyList());
+            for (int i = 0; i < found.size(); i += 2) {
+                result.add(new Match(code, entry.getKey(),
+                        (Integer) found.get(i), (String) found.get(i + 1)));
+            }
+        }
+        return result;
+    }
+
+    /** The lines of a blob, written to it as bytes, and those of them that
+     * match. */
+    private static class Lines extends OutputStream {
+
+        /** The matcher of the pattern, reset for each line. */
+        private final Matcher matcher;
+
+        /** The line numbers and texts of the lines that match. */
+        private final ArrayList<Object> found = new ArrayList<Object>();
+
+        /** The bytes of the line being written. */
+        private final byte[] line = new byte[MAX_LINE];
+
+        /** The number of bytes of the line written so far. */
+        private int length;
+
+        /** The number of lines matched so far. */
+        private int number;
+
+        /** Lines matched with MATCHER. */
+        Lines(Matcher matcher) {
+            this.matcher = matcher;
+        }
+
+        /** Match the next line, TEXT. */
+        void line(String text) {
+            this.number += 1;
+            if (this.matcher.reset(text).find()) {
+                this.found.add(this.number);
+                this.found.add(text);
+            }
+        }
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                endLine();
+            } else {
+                if (this.length == MAX_LINE) {
+                    endLine();
+                    this.number -= 1;
+                }
+                this.line[this.length] = (byte) b;
+                this.length += 1;
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) {
+            int end = off + len;
+            while (off < end) {
+                int n = 0;
+                while (off + n < end && bytes[off + n] != '\n'
+                        && this.length + n < MAX_LINE) {
+                    n += 1;
+                }
+                System.arraycopy(bytes, off, this.line, this.length, n);
+                this.length += n;
+                off += n;
+                if (off < end) {
+                    write(bytes[off]);
+                    off += 1;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (this.length > 0) {
+                endLine();
+            }
+        }
+
+        /** Match the bytes written since the last line ended. */
+        private void endLine() {
+            line(new String(this.line, 0, this.length,
+                    StandardCharsets.UTF_8));
+            this.length = 0;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package gitlet;
+
+import java.util.Random;
+
+/** A microbenchmark of the per-object hashing cost, which may be invoked
+ * as follows:
+ *      java gitlet.HashBench [ITERATIONS]
+ * For several object sizes, it prints the average time to hash one object
+ * with each HashEngine, and with Utils.sha1, which looks up a new
+ * MessageDigest on every call.
+ *  @author Nitin Nazeer
+ */
+public class HashBench {
+
+    /** Object sizes measured, in bytes. */
+    private static final int[] SIZES = {64, 1024, 64 * 1024};
+
+    /** Run the benchmark for ARGS[0] iterations per case, or 200000. */
+    public static void main(String... args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        Random random = new Random(0);
+        System.out.printf("%-10s %10s %10s %10s%n", "size", "Utils.sha1",
+                "sha1", "sha256");
+        for (int size : SIZES) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            int n = Math.max(1, iterations / Math.max(1, size / 1024));
+            double legacy = time(n, () -> Utils.sha1(data));
+            double sha1 = time(n, () -> HashEngine.SHA1.hash(data));
+            double sha256 = time(n, () -> HashEngine.SHA256.hash(data));
+            System.out.printf("%-10d %8.0fns %8.0fns %8.0fns%n", size,
+                    legacy, sha1, sha256);
+        }
+    }
+
+    /** Returns the average time in nanoseconds of N runs of TASK, after as
+     * many runs of warm-up. */
+    private static double time(int n, Runnable task) {
+        for (int i = 0; i < n; i += 1) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i += 1) {
+            task.run();
+        }
+        return (double) (System.nanoTime() - start) / n;
+    }
+}
@@ -0,0 +1,136 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** The hash function naming the objects of a repository. A repository picks
+ * its engine once, at init, and records it under core.objectFormat; repos
+ * without that setting use SHA-1. Each thread reuses one digest per engine,
+ * so hashing an object costs no digest lookup or allocation.
+ *
+ * @author Nitin Nazeer
+ */
+public class HashEngine {
+
+    /** SHA-1, the original object format. */
+    static final HashEngine SHA1 = new HashEngine("sha1", "SHA-1");
+
+    /** SHA-256, the alternative object format. */
+    static final HashEngine SHA256 = new HashEngine("sha256", "SHA-256");
+
+    /** Config key recording the object format of a repository. */
+    static final String OBJECT_FORMAT = "core.objectFormat";
+
+    /** Hexadecimal digits, indexed by value. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** The engine of the repository in the working directory, once
+     * known. Threads racing to set it find the same engine. */
+    private static volatile HashEngine current;
+
+    /** The name recorded in the config, e.g. sha1. */
+    private final String name;
+
+    /** The name of the algorithm as known to MessageDigest. */
+    private final String algorithm;
+
+    /** Length of a full hashcode as a hexadecimal numeral. */
+    private final int uidLength;
+
+    /** The reusable digest of each thread. */
+    private final ThreadLocal<MessageDigest> digests;
+
+    /** An engine recorded as NAME that hashes with ALGORITHM. */
+    private HashEngine(String name, String algorithm) {
+        this.name = name;
+        this.algorithm = algorithm;
+        this.uidLength = 2 * newDigest().getDigestLength();
+        this.digests = ThreadLocal.withInitial(this::newDigest);
+    }
+
+    /** Returns the engine of the repository in the working directory. */
+    static HashEngine current() {
+        HashEngine result = current;
+        if (result == null) {
+            result = forName(Config.get(OBJECT_FORMAT, SHA1.name));
+            current = result;
+        }
+        return result;
+    }
+
+    /** Returns the engine recorded as NAME. */
+    static HashEngine forName(String name) {
+        if (name.equals(SHA1.name)) {
+            return SHA1;
+        } else if (name.equals(SHA256.name)) {
+            return SHA256;
+        }
+        throw Utils.error("Unknown object format: %s", name);
+    }
+
+    /** Returns the name recorded in the config for this engine. */
+    String getName() {
+        return this.name;
+    }
+
+    /** Returns the length of a full hashcode as a hexadecimal numeral. */
+    int uidLength() {
+        return this.uidLength;
+    }
+
+    /** Returns the hash of the concatenation of VALS, which may be any
+     * mixture of byte arrays and Strings, using this thread's digest. */
+    String hash(Object... vals) {
+        MessageDigest md = digest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to hash");
+            }
+        }
+        return finish(md);
+    }
+
+    /** Returns the hash of the remaining bytes of DATA, leaving DATA's
+     * position unchanged. */
+    String hash(ByteBuffer data) {
+        MessageDigest md = digest();
+        md.update(data.duplicate());
+        return finish(md);
+    }
+
+    /** Returns this thread's digest, reset. It must be finished before the
+     * thread hashes anything else with this engine. */
+    MessageDigest digest() {
+        MessageDigest md = this.digests.get();
+        md.reset();
+        return md;
+    }
+
+    /** Returns a digest of its own, for streaming contents that are hashed
+     * while other objects are. */
+    MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(this.algorithm);
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support "
+                    + this.algorithm);
+        }
+    }
+
+    /** Completes MD and returns the hash as a hexadecimal numeral. */
+    String finish(MessageDigest md) {
+        byte[] digest = md.digest();
+        char[] result = new char[2 * digest.length];
+        for (int i = 0; i < digest.length; i += 1) {
+            result[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(result);
+    }
+}
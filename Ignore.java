@@ -0,0 +1,236 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.regex.Pattern;
+
+/** The ignore rules of the working tree, read from the .gitletignore file
+ * at its top, one pattern per line as for Git: blank lines and lines
+ * starting with # are skipped, a leading ! re-includes what an earlier
+ * pattern ignored, a trailing slash matches directories only, and a
+ * pattern with a slash anywhere else is matched against the whole path
+ * from the top rather than against the last name. * and ? do not match
+ * slashes, and ** matches any number of directories.
+ *
+ * Each pattern is compiled once per load: a plain name becomes a string
+ * comparison, *.EXT an ending comparison and anything else a regular
+ * expression. While no pattern is negated, which is the usual case, the
+ * plain names and endings are kept in hash sets and a path is looked up
+ * in them rather than tried against every pattern.
+ *
+ * @author Nitin Nazeer
+ */
+public class Ignore {
+
+    /** The name of the ignore file. */
+    static final String IGNORE_FILE = ".gitletignore";
+
+    /** The patterns tried in reverse order, the last to match deciding;
+     * all of them if any is negated, else those not in the sets below. */
+    private final ArrayList<Rule> rules = new ArrayList<Rule>();
+
+    /** Names ignored wherever they are. */
+    private final HashSet<String> names = new HashSet<String>();
+
+    /** Names of directories ignored wherever they are. */
+    private final HashSet<String> dirNames = new HashSet<String>();
+
+    /** Endings starting with a dot, such as .class, of names ignored
+     * wherever they are. */
+    private final HashSet<String> endings = new HashSet<String>();
+
+    /** The rules of the lines of TEXT. */
+    private Ignore(String text) {
+        ArrayList<Rule> all = new ArrayList<Rule>();
+        boolean negated = false;
+        for (String line : text.split("\n")) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            Rule rule = new Rule(line);
+            negated |= rule.negate;
+            all.add(rule);
+        }
+        for (Rule rule : all) {
+            if (negated || rule.anchored || rule.kind == Rule.REGEX) {
+                this.rules.add(rule);
+            } else if (rule.kind == Rule.ENDING && !rule.dirOnly
+                    && rule.text.startsWith(".")) {
+                this.endings.add(rule.text);
+            } else if (rule.kind == Rule.NAME) {
+                (rule.dirOnly ? this.dirNames : this.names).add(rule.text);
+            } else {
+                this.rules.add(rule);
+            }
+        }
+    }
+
+    /** Returns the rules of the working directory. */
+    static Ignore load() {
+        File file = Utils.join(Repo.CWD, IGNORE_FILE);
+        return new Ignore(file.isFile() ? Utils.readContentsAsString(file)
+                : "");
+    }
+
+    /** Returns true if PATH, relative to the top of the working tree and
+     * separated by slashes, names a directory if DIR and is ignored by a
+     * rule of its own. Whether a directory above it is ignored is left to
+     * the caller, since a walk of the tree never enters one. */
+    boolean ignored(String path, boolean dir) {
+        if (path.equals(Repo.GITLET_DIR.getName())) {
+            return true;
+        }
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        if (this.names.contains(name)
+                || dir && this.dirNames.contains(name)) {
+            return true;
+        }
+        for (int dot = name.indexOf('.'); dot >= 0;
+             dot = name.indexOf('.', dot + 1)) {
+            if (this.endings.contains(name.substring(dot))) {
+                return true;
+            }
+        }
+        for (int i = this.rules.size() - 1; i >= 0; i -= 1) {
+            Rule rule = this.rules.get(i);
+            if (rule.matches(path, name, dir)) {
+                return !rule.negate;
+            }
+        }
+        return false;
+    }
+
+    /** Returns true if PATH, a directory if DIR, or any directory above it
+     * is ignored. */
+    boolean ignoredPath(String path, boolean dir) {
+        for (int slash = path.indexOf('/'); slash >= 0;
+             slash = path.indexOf('/', slash + 1)) {
+            if (ignored(path.substring(0, slash), true)) {
+                return true;
+            }
+        }
+        return ignored(path, dir);
+    }
+
+    /** One compiled pattern. */
+    private static class Rule {
+
+        /** Kind of a pattern without wildcards. */
+        static final int NAME = 0;
+
+        /** Kind of a pattern * followed by a name without wildcards. */
+        static final int ENDING = 1;
+
+        /** Kind of any other pattern. */
+        static final int REGEX = 2;
+
+        /** True if the pattern re-includes what it matches. */
+        private final boolean negate;
+
+        /** True if the pattern matches directories only. */
+        private final boolean dirOnly;
+
+        /** True if the pattern matches whole paths, not last names. */
+        private final boolean anchored;
+
+        /** One of NAME, ENDING and REGEX. */
+        private final int kind;
+
+        /** The name or ending to compare with, for NAME and ENDING. */
+        private final String text;
+
+        /** The compiled pattern, for REGEX. */
+        private final Pattern regex;
+
+        /** The rule of the ignore file line LINE. */
+        Rule(String line) {
+            this.negate = line.startsWith("!");
+            if (this.negate) {
+                line = line.substring(1);
+            }
+            this.dirOnly = line.endsWith("/");
+            if (this.dirOnly) {
+                line = line.substring(0, line.length() - 1);
+            }
+            this.anchored = line.contains("/");
+            if (line.startsWith("/")) {
+                line = line.substring(1);
+            }
+            if (!hasWildcard(line)) {
+                this.kind = NAME;
+                this.text = line;
+                this.regex = null;
+            } else if (!this.anchored && line.startsWith("*")
+                    && !hasWildcard(line.substring(1))) {
+                this.kind = ENDING;
+                this.text = line.substring(1);
+                this.regex = null;
+            } else {
+                this.kind = REGEX;
+                this.text = null;
+                this.regex = Pattern.compile(toRegex(line));
+            }
+        }
+
+        /** Returns true if the rule matches PATH, whose last name is NAME,
+         * and which is a directory if DIR. */
+        boolean matches(String path, String name, boolean dir) {
+            if (this.dirOnly && !dir) {
+                return false;
+            }
+            String subject = this.anchored ? path : name;
+            switch (this.kind) {
+            case NAME:
+                return subject.equals(this.text);
+            case ENDING:
+                return subject.endsWith(this.text);
+            default:
+                return this.regex.matcher(subject).matches();
+            }
+        }
+
+        /** Returns true if GLOB has a wildcard or a character class. */
+        private static boolean hasWildcard(String glob) {
+            return glob.indexOf('*') >= 0 || glob.indexOf('?') >= 0
+                    || glob.indexOf('[') >= 0 || glob.indexOf('\\') >= 0;
+        }
+
+        /** Returns the regular expression of GLOB. */
+        private static String toRegex(String glob) {
+            StringBuilder result = new StringBuilder();
+            for (int i = 0; i < glob.length(); i += 1) {
+                char c = glob.charAt(i);
+                if (glob.startsWith("**/", i)
+                        && (i == 0 || glob.charAt(i - 1) == '/')) {
+                    result.append("(?:.*/)?");
+                    i += 2;
+                } else if (glob.startsWith("**", i)) {
+                    result.append(".*");
+                    i += 1;
+                } else if (c == '*') {
+                    result.append("[^/]*");
+                } else if (c == '?') {
+                    result.append("[^/]");
+                } else if (c == '[' && glob.indexOf(']', i + 2) > 0) {
+                    int end = glob.indexOf(']', i + 2);
+                    String set = glob.substring(i + 1, end);
+                    if (set.startsWith("!")) {
+                        set = "^" + set.substring(1);
+                    }
+                    result.append('[').append(set.replace("\\", "\\\\"))
+                            .append(']');
+                    i = end;
+                } else if (c == '\\' && i + 1 < glob.length()) {
+                    i += 1;
+                    result.append(Pattern.quote(String.valueOf(
+                            glob.charAt(i))));
+                } else {
+                    result.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return result.toString();
+        }
+    }
+}
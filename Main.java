@@ -1,35 +1,69 @@
 package gitlet;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
-/** Driver class for Gitlet, the tiny stupid version-control system.
+/** Driver class for Gitlet, the tiny stupid version-control system. Parses
+ * the command line, runs the command through Repository and prints its
+ * results; errors end the process with their message.
  *  @author Nitin Nazeer
  */
 public class Main {
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND> .... */
-    public static void main(String... args) throws IOException {
-        Repo repo = new Repo();
+    public static void main(String... args) {
         if (args.length == 0) {
             exitWithError("Please enter a command.");
         }
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            exitWithError(excp.getMessage());
+        }
+    }
+
+    /** Run the command ARGS. */
+    private static void run(String... args) {
         if (args[0].equals("init")) {
-            validateNumArgs(args, 0);
-            repo.init();
+            if (args.length == 2
+                    && args[1].startsWith("--object-format=")) {
+                Repository.init(
+                        args[1].substring("--object-format=".length()));
+            } else {
+                validateNumArgs(args, 0);
+                Repository.init(HashEngine.SHA1.getName());
+            }
             return;
         }
-        if (!(new File(repo.CWD, ".gitlet")).isDirectory()) {
-            exitWithError("Not in an initialized Gitlet directory.");
+        if (args[0].equals("clone")) {
+            if (args.length == 3 && args[1].equals("--filter=blob:none")) {
+                Repository.clone(args[2], true);
+            } else {
+                validateNumArgs(args, 1);
+                Repository.clone(args[1], false);
+            }
+            return;
         }
+        Repository repo = Repository.open();
         switch (args[0]) {
         case "display":
-            repo.display();
+            display(repo);
             break;
         case "add":
-            validateNumArgs(args, 1);
-            repo.add(args[1]);
+            if (args.length < 2) {
+                exitWithError("Incorrect operands.");
+            }
+            repo.add(Arrays.copyOfRange(args, 1, args.length));
             break;
         case "commit":
             validateNumArgs(args, 1);
@@ -39,20 +73,34 @@ public class Main {
             runCheckout(repo, args);
             break;
         case "log":
-            repo.log();
+            if (args.length == 3 && args[1].equals("--")) {
+                printLog(repo.log(args[2]));
+            } else {
+                validateNumArgs(args, 0);
+                printLog(repo.log());
+            }
             break;
         case "global-log":
-            repo.globalLog();
+            printLog(repo.globalLog());
             break;
         case "rm":
             validateNumArgs(args, 1);
             repo.rm(args[1]);
             break;
+        case "grep":
+            if (args.length < 2) {
+                exitWithError("Incorrect operands.");
+            }
+            for (Grep.Match match : repo.grep(args[1],
+                    Arrays.copyOfRange(args, 2, args.length))) {
+                System.out.println(match);
+            }
+            break;
         case "find":
-            repo.find(args[1]);
+            runFind(repo, args[1]);
             break;
         case "status":
-            repo.status();
+            printStatus(repo.status());
             break;
         case "branch":
             repo.branch(args[1]);
@@ -66,6 +114,110 @@ public class Main {
         case "merge":
             repo.merge(args[1]);
             break;
+        case "cherry-pick":
+            if (args.length < 2) {
+                exitWithError("Incorrect operands.");
+            }
+            repo.cherryPick(Arrays.copyOfRange(args, 1, args.length));
+            break;
+        case "rebase":
+            validateNumArgs(args, 1);
+            System.out.println("Rebased " + repo.rebase(args[1])
+                    + " commits.");
+            break;
+        case "migrate-objects":
+            validateNumArgs(args, 0);
+            int[] moved = repo.migrateObjects();
+            System.out.println("Migrated " + moved[0] + " commits and "
+                    + moved[1] + " blobs.");
+            break;
+        case "count-objects":
+            validateNumArgs(args, 0);
+            int[] counts = repo.countObjects();
+            System.out.println(counts[0] + " commits and " + counts[1]
+                    + " blobs reachable.");
+            System.out.println(counts[2] + " objects unreachable.");
+            break;
+        case "fsck":
+            validateNumArgs(args, 0);
+            runFsck(repo);
+            break;
+        case "pack-refs":
+            validateNumArgs(args, 0);
+            System.out.println("Packed " + repo.packRefs() + " branches.");
+            break;
+        case "maintenance":
+            runMaintenance(repo, Arrays.copyOfRange(args, 1, args.length));
+            break;
+        case "fast-import":
+            validateNumArgs(args, 0);
+            repo.fastImport(new BufferedInputStream(System.in, 1 << 16),
+                    System.out);
+            break;
+        case "fsmonitor":
+            validateNumArgs(args, 0);
+            repo.fsmonitor(() -> System.out.println(
+                    "Monitoring " + Repo.CWD + "."));
+            break;
+        case "config":
+            runConfig(repo, args);
+            break;
+        case "blame":
+            validateNumArgs(args, 1);
+            for (Blame.Line line : repo.blame(args[1])) {
+                System.out.println(line);
+            }
+            break;
+        case "add-remote":
+            validateNumArgs(args, 2);
+            repo.addRemote(args[1], args[2]);
+            break;
+        case "rm-remote":
+            validateNumArgs(args, 1);
+            repo.rmRemote(args[1]);
+            break;
+        case "add-alternate":
+            validateNumArgs(args, 1);
+            repo.addAlternate(args[1]);
+            break;
+        case "rm-alternate":
+            validateNumArgs(args, 1);
+            int copied = repo.rmAlternate(args[1]);
+            if (copied > 0) {
+                System.out.println("Copied " + copied
+                        + " objects from the alternate.");
+            }
+            break;
+        case "dedup":
+            validateNumArgs(args, 0);
+            long[] saved = repo.dedup();
+            System.out.println("Removed " + saved[0] + " objects, saving "
+                    + (saved[1] + 1023) / 1024 + " KB.");
+            break;
+        case "push":
+            validateNumArgs(args, 2);
+            repo.push(args[1], args[2]);
+            break;
+        case "fetch":
+            validateNumArgs(args, 2);
+            repo.fetch(args[1], args[2]);
+            break;
+        case "pull":
+            validateNumArgs(args, 2);
+            repo.pull(args[1], args[2]);
+            break;
+        case "sparse-checkout":
+            runSparseCheckout(repo, Arrays.copyOfRange(args, 1, args.length));
+            break;
+        case "archive":
+            runArchive(repo, Arrays.copyOfRange(args, 1, args.length));
+            break;
+        case "diff":
+            for (Diff.Entry entry
+                     : repo.diff(Arrays.copyOfRange(args, 1, args.length))) {
+                entry.print(System.out);
+            }
+            break;
         default:
             exitWithError("No command with that name exists.");
         }
@@ -86,7 +238,7 @@ public class Main {
      * @param repo the active REPO object that manage the repository.
      * @param args the args passed into the command line.
      */
-    public static void runCheckout(Repo repo, String[] args) {
+    public static void runCheckout(Repository repo, String[] args) {
         if (args.length == 2) {
             repo.checkoutBranch(args[1]);
         } else if (args.length == 3) {
@@ -104,6 +256,206 @@ public class Main {
         }
     }
 
+    /** Print the log entry of each of COMMITS. */
+    private static void printLog(Iterable<Commit> commits) {
+        for (Commit curr : commits) {
+            System.out.println("===");
+            System.out.println("commit " + curr.code());
+            System.out.println("Date: " + curr.getTimestampRepr());
+            System.out.println(curr.getMessage());
+            System.out.println();
+        }
+    }
+
+    /** Print the hashcodes of the commits of REPO with MESSAGE. */
+    private static void runFind(Repository repo, String message) {
+        List<String> found = repo.find(message);
+        if (found.isEmpty()) {
+            exitWithError("Found no commit with that message.");
+        }
+        for (String code : found) {
+            System.out.println(code);
+        }
+    }
+
+    /** Print STATUS in sections. */
+    private static void printStatus(Status status) {
+        System.out.println("=== Branches ===");
+        for (String branchName : status.getBranches()) {
+            if (branchName.equals(status.getActiveBranch())) {
+                System.out.print("*");
+            }
+            System.out.println(branchName);
+        }
+        System.out.println();
+        printSection("Staged Files", status.getStaged());
+        printSection("Removed Files", status.getRemoved());
+        System.out.println("=== Modifications Not Staged For Commit ===");
+        for (String filename : status.getModified()) {
+            System.out.println(filename + " (modified)");
+        }
+        for (String filename : status.getDeleted()) {
+            System.out.println(filename + " (deleted)");
+        }
+        System.out.println();
+        printSection("Untracked Files", status.getUntracked());
+        System.out.println("=== Renames ===");
+        for (Renames.Pair pair : status.getRenames()) {
+            System.out.println(pair);
+        }
+        System.out.println();
+    }
+
+    /** Print the section TITLE listing ITEMS. */
+    private static void printSection(String title, List<String> items) {
+        System.out.println("=== " + title + " ===");
+        for (String item : items) {
+            System.out.println(item);
+        }
+        System.out.println();
+    }
+
+    /** Check REPO, printing problems and reporting progress on standard
+     * error. */
+    private static void runFsck(Repository repo) {
+        List<String> problems = repo.fsck(System.err);
+        for (String problem : problems) {
+            System.out.println(problem);
+        }
+        if (problems.isEmpty()) {
+            System.out.println("No problems found.");
+        }
+    }
+
+    /** Run maintenance on REPO as given by ARGS, which are [--auto]
+     * [--task=NAME]... [--time-limit=SECONDS], printing what each task did
+     * and how long it took. */
+    private static void runMaintenance(Repository repo, String[] args) {
+        ArrayList<String> tasks = new ArrayList<String>();
+        boolean auto = false;
+        long limit = Maintenance.DEFAULT_LIMIT_MILLIS;
+        for (String arg : args) {
+            if (arg.equals("--auto")) {
+                auto = true;
+            } else if (arg.startsWith("--task=")) {
+                tasks.add(arg.substring("--task=".length()));
+            } else if (arg.startsWith("--time-limit=")) {
+                try {
+                    limit = 1000 * Long.parseLong(
+                            arg.substring("--time-limit=".length()));
+                } catch (NumberFormatException excp) {
+                    exitWithError("Incorrect operands.");
+                }
+            } else {
+                exitWithError("Incorrect operands.");
+            }
+        }
+        for (Maintenance.Result result
+                 : repo.maintenance(tasks, auto, limit)) {
+            System.out.println(result);
+        }
+    }
+
+    /** Print or set the config key of REPO named by ARGS. */
+    private static void runConfig(Repository repo, String[] args) {
+        if (args.length == 2) {
+            String value = repo.config(args[1]);
+            if (value == null) {
+                exitWithError("No value set for " + args[1] + ".");
+            }
+            System.out.println(value);
+        } else {
+            validateNumArgs(args, 2);
+            repo.config(args[1], args[2]);
+        }
+    }
+
+    /** Run sparse-checkout set PATTERN..., list or disable on REPO, as
+     * given by ARGS. */
+    private static void runSparseCheckout(Repository repo, String[] args) {
+        List<String> kept;
+        if (args.length == 1 && args[0].equals("list")) {
+            for (String pattern : repo.sparsePatterns()) {
+                System.out.println(pattern);
+            }
+            return;
+        } else if (args.length > 1 && args[0].equals("set")) {
+            kept = repo.sparseCheckout(
+                    Arrays.copyOfRange(args, 1, args.length));
+        } else if (args.length == 1 && args[0].equals("disable")) {
+            kept = repo.sparseCheckout();
+        } else {
+            exitWithError("Incorrect operands.");
+            return;
+        }
+        for (String filename : kept) {
+            System.out.println("Keeping modified " + filename + ".");
+        }
+    }
+
+    /** Write an archive of REPO as given by ARGS, which are
+     * [--format=tar|zip] [-o FILE] COMMIT. The format defaults to zip for a
+     * FILE ending in .zip and to tar otherwise, and the archive goes to
+     * standard output unless a FILE is given. A FILE is removed again if
+     * the archive fails. */
+    private static void runArchive(Repository repo, String[] args) {
+        String format = null;
+        String output = null;
+        String commitId = null;
+        for (int i = 0; i < args.length; i += 1) {
+            if (args[i].startsWith("--format=")) {
+                format = args[i].substring("--format=".length());
+            } else if (args[i].equals("-o") && i + 1 < args.length) {
+                output = args[i + 1];
+                i += 1;
+            } else if (commitId == null) {
+                commitId = args[i];
+            } else {
+                exitWithError("Incorrect operands.");
+            }
+        }
+        if (commitId == null) {
+            exitWithError("Incorrect operands.");
+        }
+        if (format == null) {
+            format = output != null && output.endsWith(".zip") ? "zip"
+                    : "tar";
+        }
+        if (!format.equals("tar") && !format.equals("zip")) {
+            exitWithError("Unknown archive format: " + format);
+        }
+        try (OutputStream out = new BufferedOutputStream(output == null
+                ? new FileOutputStream(FileDescriptor.out) {
+                    @Override
+                    public void close() {
+                    }
+                } : new FileOutputStream(output), 1 << 16)) {
+            repo.archive(commitId, format.equals("zip"), out);
+        } catch (IOException | GitletException excp) {
+            if (output != null) {
+                new File(output).delete();
+            }
+            exitWithError(excp instanceof GitletException ? excp.getMessage()
+                    : "Could not write archive: " + excp.getMessage());
+        }
+    }
+
+    /** For each branch of REPO, display all commits in reverse order. */
+    private static void display(Repository repo) {
+        for (Map.Entry<String, String> branch : repo.branches().entrySet()) {
+            for (Commit curr = repo.commitAt(branch.getValue()); curr != null;
+                 curr = curr.getParent()) {
+                System.out.println("===");
+                System.out.println("commit " + curr.code());
+                System.out.println(curr.getMessage());
+                System.out.print("tracking: ");
+                for (String filename : curr.getTracked().keySet()) {
+                    System.out.println(filename + ", ");
+                }
+                System.out.println();
+            }
+        }
+    }
 
     /**
      *
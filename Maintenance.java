@@ -0,0 +1,436 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+
+/** Incremental upkeep of a repository, meant to be run now and then, as
+ * from a scheduler. Its tasks, in the order they run, are
+ *
+ *   prune          delete loose objects nothing reaches that have not been
+ *                  written or reused for maintenance.pruneExpireDays;
+ *                  a chunk is reached if any blob left lists it;
+ *   loose-objects  consolidate loose objects into packs geometrically;
+ *   pack-refs      fold loose branches into the packed branches file;
+ *   bitmaps        store reachability bitmaps for every branch tip.
+ *
+ * Consolidation keeps the packs of each object directory in a geometric
+ * progression: ordered by size, every pack holds at least FACTOR times as
+ * many objects as the next smaller one. The loose objects and the smallest
+ * packs that break the progression are rolled up into one new pack, so
+ * each object is rewritten only a logarithmic number of times however
+ * often maintenance runs. Unreachable objects of a rolled-up pack
+ * that is itself older than the expiry are dropped.
+ *
+ * A run is given a time limit. Tasks check it between objects, and one
+ * that runs out stops at a consistent point: a new pack holds the loose
+ * objects and whole packs copied so far, and only those are removed. Tasks
+ * not yet started are deferred to the next run. Readers are never blocked:
+ * a pack is visible only once complete, and objects are removed only once
+ * a pack holding them is. A reader that misses a loose object lists the
+ * packs again, and a pack deleted while mapped stays readable, so a run
+ * needs only the shared lock of the in-process API. The duration of every
+ * task is returned and appended to the maintenance log. Only one run at a
+ * time holds the maintenance lock.
+ *
+ * @author Nitin Nazeer
+ */
+public class Maintenance {
+
+    /** The kinds of objects maintained, in the order they are. */
+    private static final byte[] OBJECT_TAGS = {Remote.COMMIT, Remote.BLOB,
+        Remote.CHUNK};
+
+    /** The tasks, in the order they run. */
+    static final List<String> TASKS = Arrays.asList("prune",
+            "loose-objects", "pack-refs", "bitmaps");
+
+    /** Each pack must hold this many times the objects of the next smaller
+     * pack. */
+    static final int FACTOR = 2;
+
+    /** A rolled-up pack stops growing once it holds this many bytes, the
+     * most that can be mapped into memory at once. */
+    static final long MAX_PACK_BYTES = Integer.MAX_VALUE;
+
+    /** Milliseconds a run may take unless told otherwise. */
+    static final long DEFAULT_LIMIT_MILLIS = 10000;
+
+    /** Config key giving the days after which unreachable objects may be
+     * pruned. */
+    static final String PRUNE_EXPIRE = "maintenance.pruneExpireDays";
+
+    /** Config key giving the number of loose objects below which an
+     * automatic run leaves them alone. */
+    static final String AUTO_LOOSE = "maintenance.autoLooseObjects";
+
+    /** Temporary files older than this many milliseconds are left over from
+     * a crash and are removed by prune. */
+    static final long STALE_TEMP_MILLIS = 60L * 60 * 1000;
+
+    /** The lock file held while maintenance runs. */
+    static final File LOCK_FILE = Utils.join(Repo.GITLET_DIR,
+            "maintenance.lock");
+
+    /** The log of task durations, one line per task run. */
+    static final File LOG_FILE = Utils.join(Repo.GITLET_DIR,
+            "maintenance.log");
+
+    /** The branches of the repository. */
+    private final RefStore refs;
+
+    /** Commits that must be kept besides the branch tips, such as HEAD. */
+    private final Collection<String> extraTips;
+
+    /** Blobs that must be kept though no commit has them, such as those
+     * staged. */
+    private final HashSet<String> keptBlobs;
+
+    /** When the run must stop, in System.nanoTime terms. */
+    private final long deadline;
+
+    /** Objects last written before this time, in milliseconds, may be
+     * pruned if unreachable. */
+    private final long expiry;
+
+    /** The bitmaps, once reachability has been computed. */
+    private Bitmaps bitmaps;
+
+    /** The objects reachable from the tips, once computed. */
+    private BitSet reachable;
+
+    /** The chunks listed by a blob, once computed, or null if that ran out
+     * of time. */
+    private HashSet<String> usedChunks;
+
+    /** True once usedChunks has been computed or given up on. */
+    private boolean chunksListed;
+
+    /** Maintenance of the repository with branches REFS, also keeping the
+     * commits EXTRATIPS and the blobs KEPTBLOBS, that stops after
+     * LIMITMILLIS milliseconds. */
+    Maintenance(RefStore refs, Collection<String> extraTips,
+                Collection<String> keptBlobs, long limitMillis) {
+        this.refs = refs;
+        this.extraTips = extraTips;
+        this.keptBlobs = new HashSet<String>(keptBlobs);
+        this.deadline = System.nanoTime() + limitMillis * 1000000;
+        long days = Long.parseLong(Config.get(PRUNE_EXPIRE, "14"));
+        this.expiry = System.currentTimeMillis() - days * 24 * 3600 * 1000;
+    }
+
+    /** Run TASKS, or every task if there are none, in their usual order.
+     * If AUTO, the object tasks are skipped while there are few loose
+     * objects. Returns what each task did and how long it took. */
+    List<Result> run(List<String> tasks, boolean auto) {
+        for (String task : tasks) {
+            if (!TASKS.contains(task)) {
+                throw Utils.error("Unknown maintenance task: %s", task);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(LOCK_FILE.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                throw Utils.error("Maintenance is already running.");
+            }
+            ObjectWriter.flush();
+            boolean few = auto && looseCount() < Integer.parseInt(
+                    Config.get(AUTO_LOOSE, "128"));
+            ArrayList<Result> results = new ArrayList<Result>();
+            for (String task : TASKS) {
+                if (!tasks.isEmpty() && !tasks.contains(task)) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                String summary;
+                if (few && !task.equals("pack-refs")) {
+                    summary = "skipped, few loose objects";
+                } else if (start >= this.deadline) {
+                    summary = "deferred, out of time";
+                } else {
+                    summary = runTask(task);
+                }
+                results.add(new Result(task,
+                        (System.nanoTime() - start) / 1000000, summary));
+            }
+            log(results);
+            return results;
+        } catch (IOException excp) {
+            throw Utils.error("Could not lock for maintenance: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /** Run TASK and return a summary of what it did. */
+    private String runTask(String task) {
+        switch (task) {
+        case "prune":
+            return prune();
+        case "loose-objects":
+            int[] counts = new int[3];
+            for (byte tag : OBJECT_TAGS) {
+                int[] packed = repack(tag);
+                for (int i = 0; i < counts.length; i += 1) {
+                    counts[i] += packed[i];
+                }
+            }
+            return String.format("packed %d objects from %d loose objects"
+                    + " and %d packs%s", counts[0], counts[1], counts[2],
+                    outOfTime() ? ", stopped for time" : "");
+        case "pack-refs":
+            return String.format("packed %d branches", this.refs.pack());
+        default:
+            reachable();
+            return String.format("%d objects reachable",
+                    this.reachable.cardinality());
+        }
+    }
+
+    /** Delete the loose commits, blobs and chunks that are unreachable and
+     * expired, and stale temporary files. Blobs go before chunks, so the
+     * chunks of pruned blobs go in the same run. Returns a summary. */
+    private String prune() {
+        int pruned = 0;
+        for (byte tag : OBJECT_TAGS) {
+            File dir = Remote.dir(Repo.GITLET_DIR, tag);
+            for (String code : ObjectStore.listLoose(dir)) {
+                if (outOfTime()) {
+                    return String.format("pruned %d objects, stopped for"
+                            + " time", pruned);
+                }
+                File f = ObjectStore.locate(dir, code);
+                if (f != null && expendable(tag, code, f.lastModified())
+                        && f.delete()) {
+                    pruned += 1;
+                }
+            }
+        }
+        File[] temps = ObjectWriter.TMP_DIR.listFiles();
+        long stale = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+        for (File temp : temps == null ? new File[0] : temps) {
+            if (temp.lastModified() < stale) {
+                temp.delete();
+            }
+        }
+        return String.format("pruned %d objects", pruned);
+    }
+
+    /** Roll the loose objects of kind TAG and the packs that break the
+     * geometric progression up into one new pack, until out of time.
+     * Returns the numbers of objects packed, of loose objects and of packs
+     * rolled up. */
+    private int[] repack(byte tag) {
+        File dir = Remote.dir(Repo.GITLET_DIR, tag);
+        List<String> loose = ObjectStore.listLoose(dir);
+        ArrayList<Pack> packs = new ArrayList<Pack>(Pack.packs(dir, true));
+        packs.sort(Comparator.comparingInt(Pack::count));
+        int split = split(packs, loose.size());
+        if (loose.isEmpty() && split < 2) {
+            return new int[3];
+        }
+
+        Pack.Writer writer = new Pack.Writer(dir);
+        ArrayList<File> packedLoose = new ArrayList<File>();
+        for (String code : loose) {
+            if (outOfTime()) {
+                break;
+            }
+            File f = ObjectStore.locate(dir, code);
+            if (f == null || expendable(tag, code, f.lastModified())) {
+                continue;
+            }
+            byte[] contents = ObjectStore.readContents(dir, code);
+            if (contents == null) {
+                continue;
+            } else if (writer.size() + contents.length > MAX_PACK_BYTES) {
+                break;
+            }
+            writer.add(code, contents);
+            packedLoose.add(f);
+        }
+        ArrayList<Pack> rolled = new ArrayList<Pack>();
+        for (Pack pack : packs.subList(0, split)) {
+            if (outOfTime() || writer.size() + pack.size() > MAX_PACK_BYTES) {
+                break;
+            }
+            long written = pack.modified();
+            for (int i = 0; i < pack.count(); i += 1) {
+                String code = pack.code(i);
+                if (!expendable(tag, code, written)) {
+                    writer.add(code, pack.contents(i));
+                }
+            }
+            rolled.add(pack);
+        }
+        if (writer.count() == 0 && rolled.isEmpty()) {
+            writer.abort();
+            return new int[3];
+        }
+        int count = writer.count();
+        writer.publish();
+        for (File f : packedLoose) {
+            f.delete();
+        }
+        for (Pack pack : rolled) {
+            pack.delete();
+        }
+        return new int[] {count, packedLoose.size(), rolled.size()};
+    }
+
+    /** Returns how many of PACKS, which are ordered by size, should be
+     * rolled up with LOOSE loose objects so that the rest, with the new
+     * pack, form a geometric progression of ratio FACTOR. */
+    static int split(List<Pack> packs, int loose) {
+        int split = 0;
+        for (int i = packs.size() - 1; i > 0; i -= 1) {
+            if (packs.get(i).count()
+                    < (long) FACTOR * packs.get(i - 1).count()) {
+                split = i + 1;
+                break;
+            }
+        }
+        long total = loose;
+        for (int i = 0; i < split; i += 1) {
+            total += packs.get(i).count();
+        }
+        while (split < packs.size()
+                && packs.get(split).count() < FACTOR * total) {
+            total += packs.get(split).count();
+            split += 1;
+        }
+        return split;
+    }
+
+    /** Returns true if object CODE of kind TAG, last written at time
+     * WRITTEN in milliseconds, may be dropped: it is expired and nothing
+     * reaches it. */
+    private boolean expendable(byte tag, String code, long written) {
+        if (written >= this.expiry
+                || tag == Remote.BLOB && this.keptBlobs.contains(code)) {
+            return false;
+        } else if (tag == Remote.CHUNK) {
+            HashSet<String> used = usedChunks();
+            return used != null && !used.contains(code);
+        }
+        reachable();
+        return !this.bitmaps.contains(this.reachable, tag, code);
+    }
+
+    /** Compute the objects reachable from the tips, storing bitmaps for
+     * them, unless done already. */
+    private void reachable() {
+        if (this.reachable == null) {
+            ArrayList<String> tips = this.refs.tips();
+            tips.addAll(this.extraTips);
+            this.bitmaps = new Bitmaps(Repo.GITLET_DIR);
+            this.reachable = this.bitmaps.reachable(tips);
+        }
+    }
+
+    /** Returns the chunks listed by the blobs of the repository, loose or
+     * packed, as Fsck finds them, computing them the first time, or null if
+     * the run ran out of time first. Blobs an alternate lends are not
+     * read: their chunks are the alternate's. */
+    private HashSet<String> usedChunks() {
+        if (!this.chunksListed) {
+            this.chunksListed = true;
+            HashSet<String> result = new HashSet<String>();
+            for (String code : ObjectStore.list(Repo.BLOBS_DIR)) {
+                if (outOfTime()) {
+                    return null;
+                }
+                Blob blob = ObjectStore.read(Repo.BLOBS_DIR, code,
+                        Blob.class);
+                if (blob != null && blob.getChunks() != null) {
+                    result.addAll(blob.getChunks());
+                }
+            }
+            this.usedChunks = result;
+        }
+        return this.usedChunks;
+    }
+
+    /** Returns the number of loose commits, blobs and chunks. */
+    private static int looseCount() {
+        return ObjectStore.listLoose(Repo.COMMIT_DIR).size()
+                + ObjectStore.listLoose(Repo.BLOBS_DIR).size()
+                + ObjectStore.listLoose(Repo.CHUNKS_DIR).size();
+    }
+
+    /** Returns true if the run is out of time. */
+    private boolean outOfTime() {
+        return System.nanoTime() >= this.deadline;
+    }
+
+    /** Append RESULTS to the maintenance log. */
+    private static void log(List<Result> results) {
+        StringBuilder lines = new StringBuilder();
+        String now = Instant.now().toString();
+        for (Result result : results) {
+            lines.append(now).append(' ').append(result.task).append(' ')
+                    .append(result.millis).append("ms ")
+                    .append(result.summary).append('\n');
+        }
+        try (OutputStream out = new FileOutputStream(LOG_FILE, true)) {
+            out.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw Utils.error("Could not write %s: %s", LOG_FILE.getName(),
+                    excp.getMessage());
+        }
+    }
+
+    /** What one task did in a run. */
+    public static class Result {
+
+        /** The name of the task. */
+        private final String task;
+
+        /** How long the task took, in milliseconds. */
+        private final long millis;
+
+        /** What the task did. */
+        private final String summary;
+
+        /** TASK, which did SUMMARY in MILLIS milliseconds. */
+        Result(String task, long millis, String summary) {
+            this.task = task;
+            this.millis = millis;
+            this.summary = summary;
+        }
+
+        /** Returns the name of the task. */
+        public String getTask() {
+            return this.task;
+        }
+
+        /** Returns how long the task took, in milliseconds. */
+        public long getMillis() {
+            return this.millis;
+        }
+
+        /** Returns what the task did. */
+        public String getSummary() {
+            return this.summary;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s (%d ms)", this.task, this.summary,
+                    this.millis);
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** A view of the files in the working tree and their hashcodes.
+ *
+ * Normally every open walks the tree, skipping ignored directories, and
+ * hashes files on demand. If
+ * the opt-in fsmonitor daemon is running, it appends the name of every
+ * changed path to a journal, and the view is instead the cached view of the
+ * last command updated by the journaled paths only. A journal that
+ * overflowed, or a daemon that stopped, falls back to a full rescan. The
+ * daemon appends to the journal and a command reads it only while holding
+ * a lock on it, so no path is lost between the two. A command drops the
+ * lines it read only once save has written the cache they went into, so a
+ * command that never saves, or fails first, leaves them for the next.
+ *
+ * @author Nitin Nazeer
+ */
+public class Monitor {
+
+    /** The lock file held by a running daemon. */
+    static final File LOCK_FILE = Utils.join(Repo.GITLET_DIR,
+            "fsmonitor.lock");
+
+    /** The journal of changed paths, one per line. */
+    static final File JOURNAL_FILE = Utils.join(Repo.GITLET_DIR,
+            "fsmonitor-journal");
+
+    /** Held with the lock on the journal, which a daemon run on a thread
+     * of this process would otherwise take twice. */
+    private static final Object JOURNAL_LOCK = new Object();
+
+    /** The cached view, saved by the last command while a daemon ran. */
+    static final File CACHE_FILE = Utils.join(Repo.GITLET_DIR,
+            "fsmonitor-cache");
+
+    /** Journal line recording that the daemon lost events. */
+    static final String OVERFLOW = "!overflow";
+
+    /** Prefix of the cookie files a command creates to learn that the
+     * daemon has journaled every earlier change. */
+    static final String COOKIE_PREFIX = ".gitlet-cookie-";
+
+    /** How long a command waits for its cookie to be journaled, in
+     * milliseconds, before falling back to a full rescan. */
+    static final long COOKIE_TIMEOUT = 1000;
+
+    /** More journaled paths than this are treated as an overflow. */
+    static final int MAX_DIRTY = 10000;
+
+    /** The working files.
+     * Keys: filenames
+     * Values: hashcode of the file, or null if not yet hashed. */
+    private HashMap<String, String> files;
+
+    /** True if the daemon is running and this view may be cached. */
+    private boolean active;
+
+    /** The length of the start of the journal this view took in, in
+     * bytes. */
+    private long consumed;
+
+    /** Open a view of the working directory. */
+    @SuppressWarnings("unchecked")
+    public static Monitor open() {
+        Monitor result = new Monitor();
+        result.active = daemonRunning() && sync();
+        if (!result.active) {
+            result.rescan();
+            return result;
+        }
+        Set<String> dirty = result.readJournal();
+        if (dirty == null || !CACHE_FILE.isFile()) {
+            result.rescan();
+            return result;
+        }
+        if (dirty.contains(Ignore.IGNORE_FILE)) {
+            result.rescan();
+            return result;
+        }
+        result.files = Utils.readObject(CACHE_FILE, HashMap.class);
+        Ignore ignore = Ignore.load();
+        for (String filename : dirty) {
+            File file = Worktree.file(filename);
+            if (file.isFile()) {
+                if (!ignore.ignoredPath(filename, false)) {
+                    result.files.put(filename, null);
+                }
+            } else if (!file.isDirectory()) {
+                String prefix = filename + "/";
+                result.files.keySet().removeIf(name -> name.equals(filename)
+                        || name.startsWith(prefix));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the names of the plain files in the working tree that are
+     * not ignored. */
+    public Set<String> files() {
+        return this.files.keySet();
+    }
+
+    /** Returns the hashcode of working file FILENAME, which must be one of
+     * files(). */
+    public String hash(String filename) {
+        String result = this.files.get(filename);
+        if (result == null) {
+            result = Blob.hashFile(Utils.join(Repo.CWD, filename));
+            this.files.put(filename, result);
+        }
+        return result;
+    }
+
+    /** Save the view for the next command if the daemon is running, and
+     * drop the journaled paths it took in. */
+    public void save() {
+        if (this.active) {
+            Utils.writeObject(CACHE_FILE, this.files);
+            dropJournal(this.consumed);
+        }
+    }
+
+    /** Replace the view with a walk of the working tree. */
+    private void rescan() {
+        this.files = new HashMap<String, String>();
+        for (String filename : Worktree.files(Ignore.load())) {
+            if (!filename.startsWith(COOKIE_PREFIX)) {
+                this.files.put(filename, null);
+            }
+        }
+    }
+
+    /** Returns true if a daemon holds the lock file. */
+    static boolean daemonRunning() {
+        if (!LOCK_FILE.isFile()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(LOCK_FILE.toPath(),
+                StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Create a cookie file and wait for the daemon to journal it. The
+     * daemon journals every directory with events waiting together, cookies
+     * last, so once it has, every change made before this command is in the
+     * journal, as long as the watch service queues events as they happen
+     * rather than by polling. Returns false on timeout. */
+    private static boolean sync() {
+        File cookie = Utils.join(Repo.CWD, COOKIE_PREFIX + System.nanoTime());
+        String line = cookie.getName() + "\n";
+        try {
+            if (!cookie.createNewFile()) {
+                return false;
+            }
+            long deadline = System.currentTimeMillis() + COOKIE_TIMEOUT;
+            while (System.currentTimeMillis() < deadline) {
+                if (JOURNAL_FILE.isFile() && Utils.readContentsAsString(
+                        JOURNAL_FILE).contains(line)) {
+                    return true;
+                }
+                Thread.sleep(2);
+            }
+            return false;
+        } catch (IOException | InterruptedException excp) {
+            return false;
+        } finally {
+            cookie.delete();
+        }
+    }
+
+    /** Returns the paths journaled since the cache was last saved, or
+     * null if the journal overflowed or could not be read, recording how
+     * much of it was read. The journal is read holding its lock, so the
+     * daemon appends either before or after. */
+    private Set<String> readJournal() {
+        HashSet<String> result = new HashSet<String>();
+        String journal;
+        synchronized (JOURNAL_LOCK) {
+            if (!JOURNAL_FILE.isFile()) {
+                return result;
+            }
+            try (FileChannel channel = FileChannel.open(
+                    JOURNAL_FILE.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+                 FileLock lock = channel.lock()) {
+                ByteBuffer bytes = ByteBuffer.allocate((int) channel.size());
+                while (bytes.hasRemaining()
+                        && channel.read(bytes, bytes.position()) >= 0) {
+                    continue;
+                }
+                this.consumed = bytes.position();
+                journal = new String(bytes.array(), 0, bytes.position(),
+                        StandardCharsets.UTF_8);
+            } catch (IOException excp) {
+                return null;
+            }
+        }
+        for (String line : journal.split("\n")) {
+            if (line.equals(OVERFLOW) || result.size() >= MAX_DIRTY) {
+                return null;
+            }
+            if (!line.isEmpty() && !line.startsWith(COOKIE_PREFIX)) {
+                result.add(line);
+            }
+        }
+        return result;
+    }
+
+    /** Run the daemon until killed, journaling every change to the working
+     * tree. Every directory the ignore rules leave in is watched; a new
+     * directory or a change of the rules is watched from then on and
+     * journaled as an overflow, so the next command walks the tree. STARTED
+     * is run once the tree is watched. */
+    public static void run(Runnable started) {
+        try (FileChannel channel = FileChannel.open(LOCK_FILE.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                throw Utils.error("An fsmonitor is already running.");
+            }
+            CACHE_FILE.delete();
+            JOURNAL_FILE.delete();
+            WatchService watcher = FileSystems.getDefault().newWatchService();
+            HashMap<WatchKey, String> dirs = new HashMap<WatchKey, String>();
+            watch(watcher, dirs, "", Ignore.load());
+            started.run();
+            while (true) {
+                ArrayList<WatchKey> ready = new ArrayList<WatchKey>();
+                for (WatchKey key = watcher.take(); key != null;
+                     key = watcher.poll()) {
+                    ready.add(key);
+                }
+                StringBuilder lines = new StringBuilder();
+                StringBuilder cookies = new StringBuilder();
+                for (WatchKey key : ready) {
+                    String dir = dirs.get(key);
+                    if (dir != null) {
+                        journal(watcher, dirs, dir, key.pollEvents(), lines,
+                                cookies);
+                    }
+                    if (!key.reset()) {
+                        dirs.remove(key);
+                    }
+                }
+                append(lines.append(cookies).toString());
+            }
+        } catch (IOException excp) {
+            throw Utils.error("fsmonitor failed: %s", excp.getMessage());
+        } catch (InterruptedException excp) {
+            throw Utils.error("fsmonitor interrupted.");
+        }
+    }
+
+    /** Watch the directory DIR of the working tree, or its top if DIR is
+     * empty, and every directory under it IGNORE leaves in, with WATCHER,
+     * recording the names of their keys in DIRS. */
+    private static void watch(WatchService watcher,
+                              HashMap<WatchKey, String> dirs, String dir,
+                              Ignore ignore) throws IOException {
+        Path top = Repo.CWD.toPath();
+        Path start = dir.isEmpty() ? top : top.resolve(dir);
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(
+                    Path path, BasicFileAttributes attrs) throws IOException {
+                String name = Worktree.name(top, path);
+                if (!path.equals(top) && ignore.ignored(name, true)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                dirs.put(path.register(watcher,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY), name);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path path,
+                                                   IOException excp) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** Add the paths of EVENTS in the directory DIR of the working tree to
+     * LINES, and those of cookie files to COOKIES, watching with WATCHER
+     * any directory they create. */
+    private static void journal(WatchService watcher,
+                                HashMap<WatchKey, String> dirs, String dir,
+                                List<WatchEvent<?>> events,
+                                StringBuilder lines, StringBuilder cookies)
+            throws IOException {
+        for (WatchEvent<?> event : events) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                lines.append(OVERFLOW).append('\n');
+                continue;
+            }
+            String filename = ((Path) event.context()).toString();
+            if (!dir.isEmpty()) {
+                filename = dir + "/" + filename;
+            }
+            if (filename.equals(Repo.GITLET_DIR.getName())) {
+                continue;
+            } else if (filename.startsWith(COOKIE_PREFIX)) {
+                cookies.append(filename).append('\n');
+                continue;
+            }
+            File file = Worktree.file(filename);
+            if (filename.equals(Ignore.IGNORE_FILE)) {
+                watch(watcher, dirs, "", Ignore.load());
+                lines.append(OVERFLOW).append('\n');
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && file.isDirectory()) {
+                Ignore ignore = Ignore.load();
+                if (!ignore.ignoredPath(filename, true)) {
+                    watch(watcher, dirs, filename, ignore);
+                    lines.append(OVERFLOW).append('\n');
+                }
+            }
+            lines.append(filename).append('\n');
+        }
+    }
+
+    /** Remove the first LENGTH bytes of the journal, keeping whatever the
+     * daemon appended after them, holding its lock. */
+    private static void dropJournal(long length) {
+        if (length == 0) {
+            return;
+        }
+        synchronized (JOURNAL_LOCK) {
+            try (FileChannel channel = FileChannel.open(
+                    JOURNAL_FILE.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+                 FileLock lock = channel.lock()) {
+                ByteBuffer rest = ByteBuffer.allocate(
+                        (int) Math.max(channel.size() - length, 0));
+                while (rest.hasRemaining() && channel.read(rest,
+                        length + rest.position()) >= 0) {
+                    continue;
+                }
+                rest.flip();
+                channel.truncate(0);
+                while (rest.hasRemaining()) {
+                    channel.write(rest, rest.position());
+                }
+            } catch (IOException excp) {
+                return;
+            }
+        }
+    }
+
+    /** Append LINES to the journal, holding its lock. */
+    private static void append(String lines) throws IOException {
+        if (lines.isEmpty()) {
+            return;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(
+                lines.getBytes(StandardCharsets.UTF_8));
+        synchronized (JOURNAL_LOCK) {
+            try (FileChannel channel = FileChannel.open(
+                    JOURNAL_FILE.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                 FileLock lock = channel.lock()) {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/** Static helpers for the object directories (commits, blobs, chunks).
+ * Each loose object lives in a subdirectory named by the first two hex
+ * digits of its hashcode, so no single directory grows past a small
+ * fraction of the store. Objects left in the old flat layout are still
+ * found until they are moved by migrate, and objects consolidated into
+ * packs by maintenance are found in those. Lookups in the object
+ * directories of a repository fall back to its alternates, read only;
+ * writes, listings and locate see the local store alone.
+ *
+ * @author Nitin Nazeer
+ */
+public class ObjectStore {
+
+    /** Number of leading hashcode characters naming the shard. */
+    static final int SHARD_LENGTH = 2;
+
+    /** Returns the sharded location of the object CODE in DIR.
+     *
+     * @param dir the object directory.
+     * @param code the full hashcode of the object. */
+    static File file(File dir, String code) {
+        return Utils.join(dir, code.substring(0, SHARD_LENGTH),
+                code.substring(SHARD_LENGTH));
+    }
+
+    /** Returns the file holding object CODE in DIR, in either layout, or
+     * null if there is none loose. An object still queued by ObjectWriter
+     * is waited for. */
+    static File locate(File dir, String code) {
+        if (code.length() > SHARD_LENGTH) {
+            File f = file(dir, code);
+            ObjectWriter.await(f);
+            if (f.isFile()) {
+                return f;
+            }
+        }
+        File flat = Utils.join(dir, code);
+        if (flat.isFile()) {
+            return flat;
+        }
+        return null;
+    }
+
+    /** Returns the loose file holding object CODE in DIR, or else in an
+     * alternate of DIR, or null if there is none. */
+    static File find(File dir, String code) {
+        File f = locate(dir, code);
+        for (File alternate : Alternates.of(dir)) {
+            if (f != null) {
+                break;
+            }
+            f = locate(alternate, code);
+        }
+        return f;
+    }
+
+    /** Returns true if DIR or an alternate of it holds the object CODE,
+     * loose or packed. */
+    static boolean contains(File dir, String code) {
+        if (containsLocal(dir, code)) {
+            return true;
+        }
+        for (File alternate : Alternates.of(dir)) {
+            if (containsLocal(alternate, code)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns true if DIR itself holds the object CODE, loose or
+     * packed. */
+    static boolean containsLocal(File dir, String code) {
+        return locate(dir, code) != null || Pack.contains(dir, code, true);
+    }
+
+    /** Returns the length in bytes of the stored object CODE in DIR or
+     * else in an alternate of it, loose or packed, or -1 if it doesn't
+     * exist. */
+    static long length(File dir, String code) {
+        long result = lengthLocal(dir, code);
+        for (File alternate : Alternates.of(dir)) {
+            if (result >= 0) {
+                break;
+            }
+            result = lengthLocal(alternate, code);
+        }
+        return result;
+    }
+
+    /** Returns the length in bytes of the stored object CODE in DIR
+     * itself, or -1 if it doesn't exist. */
+    private static long lengthLocal(File dir, String code) {
+        File f = locate(dir, code);
+        if (f != null) {
+            long result = f.length();
+            if (result > 0 || f.isFile()) {
+                return result;
+            }
+        }
+        return Pack.length(dir, code);
+    }
+
+    /** Returns the object CODE in DIR read as an EXPECTEDCLASS, or null if
+     * it doesn't exist. */
+    static <T extends Serializable> T read(File dir, String code,
+                                           Class<T> expectedClass) {
+        byte[] contents = readContents(dir, code);
+        if (contents == null) {
+            return null;
+        }
+        return Utils.deserialize(contents, expectedClass);
+    }
+
+    /** Returns the stored bytes of object CODE in DIR or else in an
+     * alternate of it, or null if it doesn't exist. */
+    static byte[] readContents(File dir, String code) {
+        byte[] result = readLocal(dir, code);
+        for (File alternate : Alternates.of(dir)) {
+            if (result != null) {
+                break;
+            }
+            result = readLocal(alternate, code);
+        }
+        return result;
+    }
+
+    /** Returns the stored bytes of object CODE in DIR itself, or null if
+     * it doesn't exist. A loose object removed while being read, as when
+     * maintenance has packed it, is read from its pack. */
+    private static byte[] readLocal(File dir, String code) {
+        File f = locate(dir, code);
+        if (f != null) {
+            try {
+                return Files.readAllBytes(f.toPath());
+            } catch (IOException excp) {
+                if (f.isFile()) {
+                    throw Utils.error("Could not read object %s: %s", code,
+                            excp.getMessage());
+                }
+            }
+        }
+        return Pack.read(dir, code);
+    }
+
+    /** Write OBJ into DIR as the object CODE. */
+    static void write(File dir, String code, Serializable obj) {
+        writeContents(dir, code, Utils.serialize(obj));
+    }
+
+    /** Write the raw bytes CONTENTS into DIR as the object CODE. */
+    static void writeContents(File dir, String code, byte[] contents) {
+        File f = file(dir, code);
+        f.getParentFile().mkdirs();
+        Utils.writeContents(f, contents);
+    }
+
+    /** Write the remaining bytes of CONTENTS into DIR as the object CODE,
+     * straight from the buffer. */
+    static void writeContents(File dir, String code, ByteBuffer contents) {
+        File f = file(dir, code);
+        f.getParentFile().mkdirs();
+        try (FileChannel out = FileChannel.open(f.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer src = contents.duplicate();
+            while (src.hasRemaining()) {
+                out.write(src);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Could not write object %s: %s", code,
+                    excp.getMessage());
+        }
+    }
+
+    /** Returns the full hashcode of the object in DIR whose hashcode starts
+     * with STUB, or null if there is none. A full hashcode is looked up
+     * directly, and otherwise only the one shard STUB names is listed,
+     * unless STUB is shorter than a shard name. */
+    static String expand(File dir, String stub) {
+        String result = expandLocal(dir, stub);
+        for (File alternate : Alternates.of(dir)) {
+            if (result != null) {
+                break;
+            }
+            result = expandLocal(alternate, stub);
+        }
+        return result;
+    }
+
+    /** Returns the full hashcode of the object in DIR itself whose
+     * hashcode starts with STUB, or null if there is none. */
+    private static String expandLocal(File dir, String stub) {
+        if (stub.length() >= HashEngine.current().uidLength()) {
+            return containsLocal(dir, stub) ? stub : null;
+        }
+        if (stub.length() < SHARD_LENGTH) {
+            for (String code : list(dir)) {
+                if (code.startsWith(stub)) {
+                    return code;
+                }
+            }
+            return null;
+        }
+        String shard = stub.substring(0, SHARD_LENGTH);
+        String rest = stub.substring(SHARD_LENGTH);
+        List<String> names = Utils.plainFilenamesIn(Utils.join(dir, shard));
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(rest)) {
+                    return shard + name;
+                }
+            }
+        }
+        List<String> flat = Utils.plainFilenamesIn(dir);
+        if (flat != null) {
+            for (String code : flat) {
+                if (code.startsWith(stub)) {
+                    return code;
+                }
+            }
+        }
+        return Pack.expand(dir, stub);
+    }
+
+    /** Returns the hashcodes of all objects in DIR, loose or packed, each
+     * once, in lexicographic order. */
+    static List<String> list(File dir) {
+        List<String> loose = listLoose(dir);
+        List<String> packed = Pack.list(dir);
+        if (packed.isEmpty()) {
+            return loose;
+        }
+        TreeSet<String> result = new TreeSet<String>(loose);
+        result.addAll(packed);
+        return new ArrayList<String>(result);
+    }
+
+    /** Returns the hashcodes of the loose objects in DIR, in lexicographic
+     * order. */
+    static List<String> listLoose(File dir) {
+        ArrayList<String> result = new ArrayList<String>();
+        String[] shards = dir.list();
+        if (shards == null) {
+            return result;
+        }
+        for (String shard : shards) {
+            File sub = Utils.join(dir, shard);
+            if (shard.length() != SHARD_LENGTH || !sub.isDirectory()) {
+                if (sub.isFile()) {
+                    result.add(shard);
+                }
+                continue;
+            }
+            for (String name : Utils.plainFilenamesIn(sub)) {
+                result.add(shard + name);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Move every object of DIR still in the flat layout into its shard.
+     * Returns the number of objects moved. */
+    static int migrate(File dir) {
+        int moved = 0;
+        List<String> flat = Utils.plainFilenamesIn(dir);
+        if (flat == null) {
+            return 0;
+        }
+        for (String code : flat) {
+            if (code.length() <= SHARD_LENGTH) {
+                continue;
+            }
+            File dest = file(dir, code);
+            dest.getParentFile().mkdir();
+            try {
+                Files.move(Utils.join(dir, code).toPath(), dest.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw Utils.error("Could not move object %s: %s", code,
+                        excp.getMessage());
+            }
+            moved += 1;
+        }
+        return moved;
+    }
+}
@@ -0,0 +1,207 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/** Write-behind for new objects of this repository, or of another one
+ * objects are pushed to. A write is queued onto a small pool of threads
+ * and returns at once; each thread writes the object to a temporary file
+ * in the tmp directory of its repository, syncs it and moves it into
+ * place, so readers never see a partial object. At most QUEUE_LENGTH
+ * objects and QUEUE_BYTES bytes wait at a time, and a write blocks until
+ * there is room.
+ *
+ * flush waits for every queued write and then syncs each directory that
+ * gained an entry once, however many objects went into it. Callers flush
+ * before saving any ref or staging entry naming the new objects, so those
+ * never point at objects that could be lost in a crash. Reading an object
+ * still queued waits for its write. Setting core.fsyncObjects to false
+ * skips the syncs.
+ *
+ * @author Nitin Nazeer
+ */
+public class ObjectWriter {
+
+    /** Config key that, when false, turns off syncing of objects. */
+    static final String FSYNC_OBJECTS = "core.fsyncObjects";
+
+    /** The directory objects are written in before being moved into
+     * place. */
+    static final File TMP_DIR = Utils.join(Repo.GITLET_DIR, "tmp");
+
+    /** Number of threads writing objects. */
+    static final int THREADS = 4;
+
+    /** The most objects waiting to be written. */
+    static final int QUEUE_LENGTH = 256;
+
+    /** The most bytes of objects waiting to be written. */
+    static final int QUEUE_BYTES = 32 * 1024 * 1024;
+
+    /** The threads writing objects, started by the first write. */
+    private static ExecutorService pool;
+
+    /** The writes not yet known to be done, by destination. */
+    private static final ConcurrentHashMap<File, Future<?>> PENDING =
+            new ConcurrentHashMap<File, Future<?>>();
+
+    /** Directories that gained an entry since the last flush. */
+    private static final Set<File> DIRTY = ConcurrentHashMap.newKeySet();
+
+    /** Free places in the queue. */
+    private static final Semaphore SLOTS = new Semaphore(QUEUE_LENGTH);
+
+    /** Free bytes in the queue. */
+    private static final Semaphore BYTES = new Semaphore(QUEUE_BYTES);
+
+    /** Whether objects and directories are synced, read on first write. */
+    private static boolean fsync;
+
+    /** Queue OBJ to be written into DIR as the object CODE, unless it is
+     * stored or queued already. */
+    static void write(File dir, String code, Serializable obj) {
+        if (!stored(dir, code)) {
+            write(dir, code, Utils.serialize(obj));
+        }
+    }
+
+    /** Queue the raw bytes CONTENTS to be written into DIR as the object
+     * CODE, unless it is stored or queued already. Blocks while the queue
+     * is full. */
+    static void write(File dir, String code, byte[] contents) {
+        File f = ObjectStore.file(dir, code);
+        if (stored(dir, code)) {
+            return;
+        }
+        int cost = Math.min(contents.length, QUEUE_BYTES);
+        SLOTS.acquireUninterruptibly();
+        BYTES.acquireUninterruptibly(cost);
+        synchronized (ObjectWriter.class) {
+            if (pool == null) {
+                fsync = !Config.get(FSYNC_OBJECTS, "true").equals("false");
+                TMP_DIR.mkdir();
+                pool = Executors.newFixedThreadPool(THREADS, task -> {
+                    Thread thread = new Thread(task, "object-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            PENDING.put(f, pool.submit(() -> {
+                try {
+                    store(dir, f, contents);
+                    return null;
+                } finally {
+                    BYTES.release(cost);
+                    SLOTS.release();
+                }
+            }));
+        }
+    }
+
+    /** Returns true if object CODE of DIR is queued, loose or packed. A
+     * loose object found is freshened, so that maintenance, which only
+     * prunes unreachable objects left alone for a while, keeps it for
+     * whatever is about to refer to it again. */
+    private static boolean stored(File dir, String code) {
+        File f = ObjectStore.file(dir, code);
+        if (PENDING.containsKey(f)) {
+            return true;
+        }
+        if (f.isFile()) {
+            f.setLastModified(System.currentTimeMillis());
+            return true;
+        }
+        return Pack.contains(dir, code, false);
+    }
+
+    /** Wait for the queued write of F, if any. */
+    static void await(File f) {
+        Future<?> result = PENDING.get(f);
+        if (result != null) {
+            waitFor(result);
+        }
+    }
+
+    /** Wait for every queued write, then sync every directory they added
+     * entries to. */
+    static void flush() {
+        for (File f : new ArrayList<File>(PENDING.keySet())) {
+            Future<?> result = PENDING.get(f);
+            if (result != null) {
+                waitFor(result);
+                PENDING.remove(f, result);
+            }
+        }
+        for (File dir : new ArrayList<File>(DIRTY)) {
+            DIRTY.remove(dir);
+            if (fsync) {
+                sync(dir.toPath());
+            }
+        }
+    }
+
+    /** Write CONTENTS to a temporary file and move it to F, an object of
+     * DIR, syncing it first. */
+    private static void store(File dir, File f, byte[] contents)
+            throws IOException {
+        File tmpDir = Utils.join(dir.getParentFile(), TMP_DIR.getName());
+        if (!tmpDir.isDirectory()) {
+            tmpDir.mkdir();
+        }
+        Path tmp = Files.createTempFile(tmpDir.toPath(), "obj", null);
+        try (FileChannel out = FileChannel.open(tmp,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer src = ByteBuffer.wrap(contents);
+            while (src.hasRemaining()) {
+                out.write(src);
+            }
+            if (fsync) {
+                out.force(false);
+            }
+        }
+        File shard = f.getParentFile();
+        if (!shard.isDirectory() && shard.mkdir()) {
+            DIRTY.add(shard.getParentFile());
+        }
+        Files.move(tmp, f.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        DIRTY.add(shard);
+    }
+
+    /** Sync the directory DIR, where the platform allows it. */
+    private static void sync(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir,
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Wait for RESULT, rethrowing the failure of its write. */
+    private static void waitFor(Future<?> result) {
+        try {
+            result.get();
+        } catch (InterruptedException | ExecutionException excp) {
+            Throwable cause = excp.getCause() == null ? excp
+                    : excp.getCause();
+            throw Utils.error("Could not write object: %s",
+                    cause.getMessage());
+        }
+    }
+}
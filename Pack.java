@@ -0,0 +1,492 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A pack: many objects of one object directory stored in a single file,
+ * with an index sorted by hashcode beside it. Packs live in the pack
+ * subdirectory of their object directory as pack-NAME.pack and
+ * pack-NAME.idx. The pack file holds the stored bytes of each object, as
+ * they would be in a loose file, one after another; the index holds, for
+ * each object in order of hashcode, the hashcode padded to a fixed width,
+ * the offset of the object in the pack and its length, so an object is
+ * found by bisection of the index mapped into memory.
+ *
+ * A pack is written under a temporary name and synced, and its index is
+ * moved into place last, so a pack is never seen before it is complete.
+ * Packs are opened once per process and object directory; a lookup that
+ * misses lists the pack directory again, so packs made meanwhile, as by
+ * maintenance in another process, are found. A pack deleted while mapped
+ * stays readable to those that have it open.
+ *
+ * @author Nitin Nazeer
+ */
+public class Pack {
+
+    /** Name of the pack directory in an object directory. */
+    static final String DIR_NAME = "pack";
+
+    /** Suffix of pack files. */
+    static final String PACK_SUFFIX = ".pack";
+
+    /** Suffix of index files. */
+    static final String INDEX_SUFFIX = ".idx";
+
+    /** First bytes of an index file. */
+    static final int INDEX_MAGIC = 0x474c4958;
+
+    /** Bytes of an index file before its entries: magic, count and
+     * width. */
+    static final int INDEX_HEADER = 12;
+
+    /** A pack directory changed less than this many milliseconds before it
+     * was listed is listed again however it looks, since its modification
+     * time may not yet show every change. */
+    static final long RACY_MILLIS = 2000;
+
+    /** The packs opened so far, by object directory. */
+    private static final ConcurrentHashMap<File, List<Pack>> OPEN =
+            new ConcurrentHashMap<File, List<Pack>>();
+
+    /** The modification time of each pack directory when last listed. */
+    private static final ConcurrentHashMap<File, Long> LISTED =
+            new ConcurrentHashMap<File, Long>();
+
+    /** The pack file. */
+    private final File packFile;
+
+    /** The index file. */
+    private final File indexFile;
+
+    /** The pack file mapped into memory. */
+    private final MappedByteBuffer data;
+
+    /** The index file mapped into memory. */
+    private final MappedByteBuffer index;
+
+    /** The number of objects in the pack. */
+    private final int count;
+
+    /** The width of a hashcode in the index. */
+    private final int width;
+
+    /** The pack whose index is INDEXFILE. */
+    private Pack(File indexFile) throws IOException {
+        String name = indexFile.getName();
+        this.indexFile = indexFile;
+        this.packFile = new File(indexFile.getParentFile(),
+                name.substring(0, name.length() - INDEX_SUFFIX.length())
+                + PACK_SUFFIX);
+        this.index = map(indexFile);
+        this.data = map(this.packFile);
+        if (this.index.limit() < INDEX_HEADER
+                || this.index.getInt(0) != INDEX_MAGIC) {
+            throw new IOException("bad index " + name);
+        }
+        this.count = this.index.getInt(4);
+        this.width = this.index.getInt(8);
+    }
+
+    /** Returns the stored bytes of object CODE in the packs of DIR, or
+     * null if none has it. */
+    static byte[] read(File dir, String code) {
+        for (Pack pack : packs(dir, false)) {
+            int i = pack.find(code);
+            if (i >= 0) {
+                return pack.contents(i);
+            }
+        }
+        for (Pack pack : packs(dir, true)) {
+            int i = pack.find(code);
+            if (i >= 0) {
+                return pack.contents(i);
+            }
+        }
+        return null;
+    }
+
+    /** Returns the length in bytes of object CODE in the packs of DIR, or
+     * -1 if none has it. */
+    static long length(File dir, String code) {
+        for (boolean rescan : new boolean[] {false, true}) {
+            for (Pack pack : packs(dir, rescan)) {
+                int i = pack.find(code);
+                if (i >= 0) {
+                    return pack.length(i);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Returns true if a pack of DIR has object CODE, listing the pack
+     * directory again on a miss if RESCAN. */
+    static boolean contains(File dir, String code, boolean rescan) {
+        for (Pack pack : packs(dir, false)) {
+            if (pack.find(code) >= 0) {
+                return true;
+            }
+        }
+        if (!rescan) {
+            return false;
+        }
+        for (Pack pack : packs(dir, true)) {
+            if (pack.find(code) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the hashcode of an object in the packs of DIR that starts
+     * with STUB, or null if there is none. */
+    static String expand(File dir, String stub) {
+        for (Pack pack : packs(dir, true)) {
+            int i = pack.search(stub);
+            if (i < pack.count && pack.code(i).startsWith(stub)) {
+                return pack.code(i);
+            }
+        }
+        return null;
+    }
+
+    /** Returns the hashcodes of the objects in the packs of DIR, each once,
+     * unsorted. */
+    static List<String> list(File dir) {
+        ArrayList<String> result = new ArrayList<String>();
+        List<Pack> packs = packs(dir, true);
+        for (Pack pack : packs) {
+            for (int i = 0; i < pack.count; i += 1) {
+                result.add(pack.code(i));
+            }
+        }
+        if (packs.size() > 1) {
+            Collections.sort(result);
+            ArrayList<String> unique = new ArrayList<String>();
+            for (String code : result) {
+                if (unique.isEmpty()
+                        || !unique.get(unique.size() - 1).equals(code)) {
+                    unique.add(code);
+                }
+            }
+            return unique;
+        }
+        return result;
+    }
+
+    /** Returns the packs of DIR, listing the pack directory again if
+     * RESCAN and it has changed, or if it has not been listed yet. */
+    static List<Pack> packs(File dir, boolean rescan) {
+        List<Pack> result = OPEN.get(dir);
+        if (result != null && !rescan) {
+            return result;
+        }
+        File packDir = Utils.join(dir, DIR_NAME);
+        long modified = packDir.lastModified();
+        Long listed = LISTED.get(dir);
+        if (result != null && listed != null && listed == modified
+                && System.currentTimeMillis() - modified > RACY_MILLIS) {
+            return result;
+        }
+        synchronized (OPEN) {
+            List<Pack> old = OPEN.get(dir);
+            ArrayList<Pack> packs = new ArrayList<Pack>();
+            String[] names = packDir.list();
+            if (names != null) {
+                Arrays.sort(names);
+                for (String name : names) {
+                    if (!name.startsWith("pack-")
+                            || !name.endsWith(INDEX_SUFFIX)) {
+                        continue;
+                    }
+                    File f = Utils.join(dir, DIR_NAME, name);
+                    Pack pack = null;
+                    for (Pack known : old == null ? packs : old) {
+                        if (known.indexFile.equals(f)) {
+                            pack = known;
+                        }
+                    }
+                    if (pack == null) {
+                        try {
+                            pack = new Pack(f);
+                        } catch (IOException excp) {
+                            continue;
+                        }
+                    }
+                    packs.add(pack);
+                }
+            }
+            List<Pack> opened = Collections.unmodifiableList(packs);
+            OPEN.put(dir, opened);
+            LISTED.put(dir, modified);
+            return opened;
+        }
+    }
+
+    /** Returns the name of the pack, without prefix or suffix. */
+    String name() {
+        String name = this.packFile.getName();
+        return name.substring("pack-".length(),
+                name.length() - PACK_SUFFIX.length());
+    }
+
+    /** Returns the number of objects in the pack. */
+    int count() {
+        return this.count;
+    }
+
+    /** Returns the size of the pack file in bytes. */
+    long size() {
+        return this.data.limit();
+    }
+
+    /** Returns when the pack was written, in milliseconds. */
+    long modified() {
+        return this.packFile.lastModified();
+    }
+
+    /** Returns the hashcode of the Ith object in order of hashcode. */
+    String code(int i) {
+        byte[] bytes = new byte[this.width];
+        this.index.get(entry(i), bytes);
+        return new String(bytes, StandardCharsets.US_ASCII).trim();
+    }
+
+    /** Returns the length in bytes of the Ith object in order of
+     * hashcode. */
+    int length(int i) {
+        return this.index.getInt(entry(i) + this.width + 8);
+    }
+
+    /** Returns the stored bytes of the Ith object in order of hashcode. */
+    byte[] contents(int i) {
+        int at = entry(i) + this.width;
+        long offset = this.index.getLong(at);
+        byte[] result = new byte[this.index.getInt(at + 8)];
+        this.data.get((int) offset, result);
+        return result;
+    }
+
+    /** Returns the position in order of hashcode of object CODE, or -1 if
+     * the pack does not have it. */
+    int find(String code) {
+        int i = search(code);
+        return i < this.count && code(i).equals(code) ? i : -1;
+    }
+
+    /** Delete the pack, index first, so it is never seen incomplete. */
+    void delete() {
+        if (this.indexFile.delete()) {
+            this.packFile.delete();
+        }
+    }
+
+    /** Returns the position of the first object whose hashcode is not less
+     * than CODE, or count if there is none. */
+    private int search(String code) {
+        int lo = 0;
+        int hi = this.count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (code(mid).compareTo(code) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns the offset in the index of the Ith entry. */
+    private int entry(int i) {
+        return INDEX_HEADER + i * (this.width + 12);
+    }
+
+    /** Returns F mapped into memory, read only. */
+    private static MappedByteBuffer map(File f) throws IOException {
+        try (FileChannel in = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            return in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        }
+    }
+
+    /** A pack being written into an object directory. Objects are appended
+     * as they come; publish writes the index and makes the pack visible,
+     * and abort throws it away. */
+    static class Writer {
+
+        /** The object directory written into. */
+        private final File dir;
+
+        /** The temporary pack file. */
+        private final File temp;
+
+        /** The stream appending to temp. */
+        private final DataOutputStream out;
+
+        /** The objects appended. */
+        private final ArrayList<Entry> entries = new ArrayList<Entry>();
+
+        /** The hashcodes appended, to skip duplicates. */
+        private final HashSet<String> codes = new HashSet<String>();
+
+        /** Bytes appended so far. */
+        private long offset;
+
+        /** A new pack for the object directory DIR. */
+        Writer(File dir) {
+            this.dir = dir;
+            File packDir = Utils.join(dir, DIR_NAME);
+            packDir.mkdirs();
+            try {
+                this.temp = Files.createTempFile(packDir.toPath(), "tmp-",
+                        PACK_SUFFIX).toFile();
+                this.out = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(this.temp), 1 << 16));
+            } catch (IOException excp) {
+                throw Utils.error("Could not create pack: %s",
+                        excp.getMessage());
+            }
+        }
+
+        /** Append object CODE with stored bytes CONTENTS, unless it was
+         * appended already. */
+        void add(String code, byte[] contents) {
+            if (!this.codes.add(code)) {
+                return;
+            }
+            try {
+                this.out.write(contents);
+            } catch (IOException excp) {
+                throw Utils.error("Could not write pack: %s",
+                        excp.getMessage());
+            }
+            this.entries.add(new Entry(code, this.offset, contents.length));
+            this.offset += contents.length;
+        }
+
+        /** Returns the number of objects appended. */
+        int count() {
+            return this.entries.size();
+        }
+
+        /** Returns the number of bytes appended. */
+        long size() {
+            return this.offset;
+        }
+
+        /** Sync the pack, write its index and move both into place, so
+         * later lookups in its directory find it. Returns its name. */
+        String publish() {
+            this.entries.sort((a, b) -> a.code.compareTo(b.code));
+            int width = 0;
+            for (Entry entry : this.entries) {
+                width = Math.max(width, entry.code.length());
+            }
+            StringBuilder names = new StringBuilder();
+            File indexTemp = new File(this.temp.getPath() + INDEX_SUFFIX);
+            try {
+                this.out.close();
+                sync(this.temp);
+                try (DataOutputStream idx = new DataOutputStream(
+                        new BufferedOutputStream(
+                                new FileOutputStream(indexTemp), 1 << 16))) {
+                    idx.writeInt(INDEX_MAGIC);
+                    idx.writeInt(this.entries.size());
+                    idx.writeInt(width);
+                    for (Entry entry : this.entries) {
+                        names.append(entry.code);
+                        idx.write(String.format("%-" + width + "s",
+                                entry.code).getBytes(
+                                        StandardCharsets.US_ASCII));
+                        idx.writeLong(entry.offset);
+                        idx.writeInt(entry.length);
+                    }
+                }
+                sync(indexTemp);
+                String name = "pack-" + HashEngine.current()
+                        .hash(names.toString());
+                File packDir = Utils.join(this.dir, DIR_NAME);
+                File indexFile = Utils.join(packDir, name + INDEX_SUFFIX);
+                Files.move(this.temp.toPath(),
+                        Utils.join(packDir, name + PACK_SUFFIX).toPath(),
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+                Files.move(indexTemp.toPath(), indexFile.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+                sync(packDir);
+                packs(this.dir, true);
+                return name.substring("pack-".length());
+            } catch (IOException excp) {
+                indexTemp.delete();
+                abort();
+                throw Utils.error("Could not write pack: %s",
+                        excp.getMessage());
+            }
+        }
+
+        /** Throw the pack away. */
+        void abort() {
+            try {
+                this.out.close();
+            } catch (IOException excp) {
+                this.temp.delete();
+                return;
+            }
+            this.temp.delete();
+        }
+
+        /** Sync F, a file or a directory, unless core.fsyncObjects is
+         * false. */
+        private static void sync(File f) throws IOException {
+            if (Config.get(ObjectWriter.FSYNC_OBJECTS, "true")
+                    .equals("false")) {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(f.toPath(),
+                    StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException excp) {
+                if (!f.isDirectory()) {
+                    throw excp;
+                }
+            }
+        }
+    }
+
+    /** The place of an object in a pack being written. */
+    private static class Entry {
+
+        /** The hashcode of the object. */
+        private final String code;
+
+        /** The offset of the object in the pack. */
+        private final long offset;
+
+        /** The length of the object. */
+        private final int length;
+
+        /** Object CODE, LENGTH bytes at OFFSET. */
+        Entry(String code, long offset, int length) {
+            this.code = code;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
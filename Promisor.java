@@ -0,0 +1,98 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Lazy blob fetching for partial clones. A clone made with
+ * --filter=blob:none copies commits and branches but no blobs, and records
+ * its origin under remote.promisor. Blobs are copied from the origin when
+ * first read, from the origin's loose objects, packs or alternates, and
+ * kept locally from then on. Checkouts prefetch every blob they will need
+ * in one parallel batch.
+ *
+ * @author Nitin Nazeer
+ */
+public class Promisor {
+
+    /** Config key holding the path of the origin's .gitlet directory. */
+    static final String PROMISOR = "remote.promisor";
+
+    /** Number of blobs copied at once by prefetch. */
+    static final int PREFETCH_THREADS = 8;
+
+    /** Returns the .gitlet directory blobs are fetched from, or null if
+     * this repository is not a partial clone. */
+    static File origin() {
+        String path = Config.get(PROMISOR, null);
+        return path == null ? null : new File(path);
+    }
+
+    /** Copy blob CODE and its chunks from the origin, if this repository
+     * is a partial clone and the origin has it. Returns true if the blob is
+     * now stored locally, and on disk. */
+    static boolean fetch(String code) {
+        boolean result = queue(code);
+        ObjectWriter.flush();
+        return result;
+    }
+
+    /** Queue blob CODE and its chunks, read from the origin, to be written
+     * through ObjectWriter, if this repository is a partial clone and the
+     * origin has it. Returns true if it was queued or is stored already. */
+    private static boolean queue(String code) {
+        File origin = origin();
+        if (origin == null) {
+            return false;
+        }
+        byte[] source = ObjectStore.readContents(
+                Remote.dir(origin, Remote.BLOB), code);
+        if (source == null) {
+            return false;
+        }
+        Blob blob = Utils.deserialize(source, Blob.class);
+        if (blob.getChunks() != null) {
+            File chunks = Remote.dir(origin, Remote.CHUNK);
+            for (String chunk : blob.getChunks()) {
+                if (!ObjectStore.contains(Repo.CHUNKS_DIR, chunk)) {
+                    byte[] contents = ObjectStore.readContents(chunks, chunk);
+                    if (contents == null) {
+                        throw Utils.error("Origin lacks chunk %s of blob %s.",
+                                chunk, code);
+                    }
+                    ObjectWriter.write(Repo.CHUNKS_DIR, chunk, contents);
+                }
+            }
+        }
+        ObjectWriter.write(Repo.BLOBS_DIR, code, source);
+        return true;
+    }
+
+    /** Fetch every blob of CODES not yet stored locally, several at a
+     * time. Does nothing unless this repository is a partial clone. */
+    static void prefetch(Collection<String> codes) {
+        if (origin() == null) {
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(PREFETCH_THREADS);
+        try {
+            ArrayList<Future<Boolean>> results = new ArrayList<>();
+            for (String code : codes) {
+                if (!ObjectStore.contains(Repo.BLOBS_DIR, code)) {
+                    results.add(pool.submit(() -> queue(code)));
+                }
+            }
+            for (Future<Boolean> result : results) {
+                result.get();
+            }
+            ObjectWriter.flush();
+        } catch (Exception excp) {
+            throw Utils.error("Prefetch failed: %s", excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/** The branches of a repository. Each branch updated since the last pack
+ * is a loose file of its own holding the hashcode of its tip, so an update
+ * writes one small file whatever the number of branches. pack folds the
+ * loose branches into a single packed file of "NAME HASHCODE" lines sorted
+ * by name, which is searched by bisection through a memory map, so a
+ * lookup or a listing by prefix reads only the lines it needs. A loose
+ * branch hides a packed one of the same name. Branches kept by older
+ * versions as one serialized map are packed on first use.
+ *
+ * @author Nitin Nazeer
+ */
+public class RefStore {
+
+    /** Name of the directory of loose branches in a .gitlet directory. */
+    static final String LOOSE_DIR = "refs";
+
+    /** Name of the packed branches file in a .gitlet directory. */
+    static final String PACKED_FILE = "packed-refs";
+
+    /** The .gitlet directory whose branches these are. */
+    private final File gitletDir;
+
+    /** The directory of loose branches. */
+    private final File looseDir;
+
+    /** The packed branches file. */
+    private final File packedFile;
+
+    /** The branches of the repository at GITLETDIR. */
+    RefStore(File gitletDir) {
+        this.gitletDir = gitletDir;
+        this.looseDir = Utils.join(gitletDir, LOOSE_DIR);
+        this.packedFile = Utils.join(gitletDir, PACKED_FILE);
+        File legacy = Utils.join(gitletDir, Repo.BRANCHES_FILE.getName());
+        if (legacy.isFile()) {
+            migrate(legacy);
+        }
+    }
+
+    /** Returns the hashcode of the tip of branch NAME, or null if there is
+     * no such branch. */
+    String get(String name) {
+        File loose = Utils.join(this.looseDir, encode(name));
+        if (loose.isFile()) {
+            return Utils.readContentsAsString(loose).trim();
+        }
+        MappedByteBuffer packed = mapPacked();
+        if (packed == null) {
+            return null;
+        }
+        int pos = search(packed, name);
+        if (pos < packed.limit()) {
+            String[] line = parse(packed, pos, lineEnd(packed, pos));
+            if (line[0].equals(name)) {
+                return line[1];
+            }
+        }
+        return null;
+    }
+
+    /** Returns true if there is a branch NAME. */
+    boolean contains(String name) {
+        return get(name) != null;
+    }
+
+    /** Point branch NAME at commit CODE, creating it if need be. */
+    void put(String name, String code) {
+        this.looseDir.mkdir();
+        File temp = Utils.join(this.gitletDir,
+                "ref-" + encode(name) + ".tmp");
+        Utils.writeContents(temp, code + "\n");
+        replace(temp, Utils.join(this.looseDir, encode(name)));
+    }
+
+    /** Delete branch NAME. Returns false if there was no such branch. */
+    boolean delete(String name) {
+        boolean found = Utils.join(this.looseDir, encode(name)).delete();
+        MappedByteBuffer packed = mapPacked();
+        if (packed != null) {
+            int pos = search(packed, name);
+            if (pos < packed.limit()) {
+                int end = lineEnd(packed, pos);
+                if (parse(packed, pos, end)[0].equals(name)) {
+                    writePacked(packed, pos, end + 1,
+                            new TreeMap<String, String>());
+                    found = true;
+                }
+            }
+        }
+        return found;
+    }
+
+    /** Returns the branches whose names start with PREFIX, in order of
+     * name, as name and hashcode entries read as iterated. */
+    Iterable<Map.Entry<String, String>> list(String prefix) {
+        return () -> new Merge(loose(prefix), mapPacked(), prefix, 0, 0);
+    }
+
+    /** Returns the hashcodes of the tips of every branch. */
+    ArrayList<String> tips() {
+        ArrayList<String> result = new ArrayList<String>();
+        for (Map.Entry<String, String> entry : list("")) {
+            result.add(entry.getValue());
+        }
+        return result;
+    }
+
+    /** Fold every loose branch into the packed file and delete the loose
+     * files. Returns the number of branches packed. */
+    int pack() {
+        TreeMap<String, String> loose = loose("");
+        if (loose.isEmpty()) {
+            return 0;
+        }
+        MappedByteBuffer packed = mapPacked();
+        writePacked(packed, 0, 0, loose);
+        for (String name : loose.keySet()) {
+            File f = Utils.join(this.looseDir, encode(name));
+            String code = Utils.readContentsAsString(f).trim();
+            if (code.equals(loose.get(name))) {
+                f.delete();
+            }
+        }
+        return loose.size();
+    }
+
+    /** Returns the loose branches whose names start with PREFIX. */
+    private TreeMap<String, String> loose(String prefix) {
+        TreeMap<String, String> result = new TreeMap<String, String>();
+        String[] names = this.looseDir.list();
+        if (names == null) {
+            return result;
+        }
+        for (String encoded : names) {
+            String name = decode(encoded);
+            if (name.startsWith(prefix)) {
+                File f = Utils.join(this.looseDir, encoded);
+                if (f.isFile()) {
+                    result.put(name, Utils.readContentsAsString(f).trim());
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Rewrite the packed file as the lines of PACKED, which may be null,
+     * without bytes [SKIPSTART, SKIPEND), and with the branches of EXTRA
+     * added or replacing those of the same names. The lines are streamed
+     * through a temporary file that then replaces the packed file. */
+    private void writePacked(MappedByteBuffer packed, int skipStart,
+                             int skipEnd, TreeMap<String, String> extra) {
+        File temp = new File(this.packedFile.getPath() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(temp), 1 << 16)) {
+            Merge lines = new Merge(extra, packed, "", skipStart, skipEnd);
+            while (lines.hasNext()) {
+                Map.Entry<String, String> entry = lines.next();
+                out.write((entry.getKey() + " " + entry.getValue() + "\n")
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Could not write %s: %s", PACKED_FILE,
+                    excp.getMessage());
+        }
+        replace(temp, this.packedFile);
+    }
+
+    /** Pack the branches of the serialized map in LEGACY, then delete
+     * it. */
+    @SuppressWarnings("unchecked")
+    private void migrate(File legacy) {
+        HashMap<String, String> branches =
+                Utils.readObject(legacy, HashMap.class);
+        writePacked(mapPacked(), 0, 0,
+                new TreeMap<String, String>(branches));
+        legacy.delete();
+    }
+
+    /** Returns the packed file mapped into memory, or null if there is
+     * none or it is empty. */
+    private MappedByteBuffer mapPacked() {
+        if (!this.packedFile.isFile() || this.packedFile.length() == 0) {
+            return null;
+        }
+        try (FileChannel in = FileChannel.open(this.packedFile.toPath(),
+                StandardOpenOption.READ)) {
+            return in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        } catch (IOException excp) {
+            throw Utils.error("Could not read %s: %s", PACKED_FILE,
+                    excp.getMessage());
+        }
+    }
+
+    /** Returns the offset of the first line of PACKED whose name is not
+     * less than NAME, or its limit if there is none. */
+    private static int search(MappedByteBuffer packed, String name) {
+        int lo = 0;
+        int hi = packed.limit();
+        while (lo < hi) {
+            int start = (lo + hi) >>> 1;
+            while (start > lo && packed.get(start - 1) != '\n') {
+                start -= 1;
+            }
+            int end = lineEnd(packed, start);
+            if (parse(packed, start, end)[0].compareTo(name) < 0) {
+                lo = end + 1;
+            } else {
+                hi = start;
+            }
+        }
+        return Math.min(lo, packed.limit());
+    }
+
+    /** Returns the offset of the newline ending the line of PACKED that
+     * starts at START, or its limit if the line is not ended. */
+    private static int lineEnd(MappedByteBuffer packed, int start) {
+        int end = start;
+        while (end < packed.limit() && packed.get(end) != '\n') {
+            end += 1;
+        }
+        return end;
+    }
+
+    /** Returns the name and hashcode of the line of PACKED from START to
+     * END. */
+    private static String[] parse(MappedByteBuffer packed, int start,
+                                  int end) {
+        byte[] bytes = new byte[end - start];
+        packed.get(start, bytes);
+        String line = new String(bytes, StandardCharsets.UTF_8);
+        int space = line.lastIndexOf(' ');
+        return new String[] {line.substring(0, space),
+            line.substring(space + 1)};
+    }
+
+    /** Move TEMP over DEST in one step. */
+    private static void replace(File temp, File dest) {
+        try {
+            Files.move(temp.toPath(), dest.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Could not update %s: %s", dest.getName(),
+                    excp.getMessage());
+        }
+    }
+
+    /** Returns the name of the loose file of branch NAME: slashes and
+     * percent signs are escaped, and so is a leading dot. */
+    static String encode(String name) {
+        String result = name.replace("%", "%25").replace("/", "%2F");
+        return result.startsWith(".") ? "%2E" + result.substring(1) : result;
+    }
+
+    /** Returns the branch name of the loose file ENCODED. */
+    static String decode(String encoded) {
+        return encoded.replace("%2E", ".").replace("%2F", "/")
+                .replace("%25", "%");
+    }
+
+    /** The branches of a prefix in order of name: loose ones merged with
+     * the lines of the packed file that start with the prefix, a loose
+     * branch taking the place of a packed one of the same name. */
+    private static class Merge
+            implements Iterator<Map.Entry<String, String>> {
+
+        /** The loose branches not yet returned. */
+        private final Iterator<Map.Entry<String, String>> loose;
+
+        /** The packed file, or null. */
+        private final MappedByteBuffer packed;
+
+        /** The prefix of the names returned. */
+        private final String prefix;
+
+        /** The start of the bytes of the packed file left out. */
+        private final int skipStart;
+
+        /** The end of the bytes of the packed file left out. */
+        private final int skipEnd;
+
+        /** The next loose branch, or null. */
+        private Map.Entry<String, String> nextLoose;
+
+        /** The next packed branch as name and hashcode, or null. */
+        private String[] nextPacked;
+
+        /** The offset of the line after nextPacked. */
+        private int pos;
+
+        /** The branches of LOOSE merged with those of PACKED, which may be
+         * null, whose names start with PREFIX, leaving out the packed
+         * bytes [SKIPSTART, SKIPEND). */
+        Merge(TreeMap<String, String> loose, MappedByteBuffer packed,
+              String prefix, int skipStart, int skipEnd) {
+            this.loose = loose.entrySet().iterator();
+            this.packed = packed;
+            this.prefix = prefix;
+            this.skipStart = skipStart;
+            this.skipEnd = skipEnd;
+            this.nextLoose = this.loose.hasNext() ? this.loose.next() : null;
+            this.pos = packed == null ? 0 : search(packed, prefix);
+            advancePacked();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.nextLoose != null || this.nextPacked != null;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int cmp = this.nextLoose == null ? 1
+                    : this.nextPacked == null ? -1
+                    : this.nextLoose.getKey().compareTo(this.nextPacked[0]);
+            Map.Entry<String, String> result;
+            if (cmp <= 0) {
+                result = this.nextLoose;
+                this.nextLoose =
+                        this.loose.hasNext() ? this.loose.next() : null;
+                if (cmp == 0) {
+                    advancePacked();
+                }
+            } else {
+                result = new AbstractMap.SimpleImmutableEntry<String, String>(
+                        this.nextPacked[0], this.nextPacked[1]);
+                advancePacked();
+            }
+            return result;
+        }
+
+        /** Read the next packed branch of the prefix into nextPacked. */
+        private void advancePacked() {
+            this.nextPacked = null;
+            if (this.packed == null) {
+                return;
+            }
+            if (this.pos >= this.skipStart && this.pos < this.skipEnd) {
+                this.pos = this.skipEnd;
+            }
+            if (this.pos < this.packed.limit()) {
+                int end = lineEnd(this.packed, this.pos);
+                String[] line = parse(this.packed, this.pos, end);
+                if (line[0].startsWith(this.prefix)) {
+                    this.nextPacked = line;
+                    this.pos = end + 1;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/** Transfer of objects between repositories on a local filesystem.
+ *
+ * The sending side walks the commit DAG back from the tip being sent and
+ * stops at the first commit the receiving side already has, so only new
+ * commits are examined. A sender with reachability bitmaps instead takes
+ * the objects its tip reaches less those the receiver's branches reach,
+ * without reading any commit it has a bitmap for. The missing commits,
+ * blobs and chunks are then streamed to the receiver as a single bundle:
+ * blobs and chunks first, commits last, so the receiver never holds a
+ * commit whose contents are missing.
+ *
+ * @author Nitin Nazeer
+ */
+public class Remote {
+
+    /** The file object repr of the remotes file. */
+    static final File REMOTES_FILE = Utils.join(Repo.GITLET_DIR, "remotes");
+
+    /** Bundle entry tag of a commit. */
+    static final byte COMMIT = 'c';
+
+    /** Bundle entry tag of a blob. */
+    static final byte BLOB = 'b';
+
+    /** Bundle entry tag of a chunk. */
+    static final byte CHUNK = 'k';
+
+    /** Bundle tag marking the end of the objects. */
+    static final byte END = 'e';
+
+    /** The .gitlet directory of the repository objects are sent from. */
+    private final File from;
+
+    /** The .gitlet directory of the repository objects are sent to. */
+    private final File to;
+
+    /** The missing objects found by negotiate, in the order they are
+     * sent. */
+    private final ArrayList<Entry> missing = new ArrayList<Entry>();
+
+    /** False if blobs are left out of the transfer, as for a partial
+     * clone. */
+    private boolean withBlobs = true;
+
+    /** Hashcodes of the blobs and chunks negotiate has looked at. */
+    private final HashSet<String> seen = new HashSet<String>();
+
+    /** An object of a bundle. */
+    private static class Entry {
+        /** The kind of object: COMMIT, BLOB or CHUNK. */
+        private final byte tag;
+
+        /** The hashcode of the object. */
+        private final String code;
+
+        /** An object of kind TAG with hashcode CODE. */
+        Entry(byte tag, String code) {
+            this.tag = tag;
+            this.code = code;
+        }
+    }
+
+    /** A transfer from the repository at FROMDIR to the one at TODIR, both
+     * .gitlet directories. */
+    Remote(File fromDir, File toDir) {
+        this.from = fromDir;
+        this.to = toDir;
+    }
+
+    /** Leave blobs and chunks out of the transfer. */
+    void skipBlobs() {
+        this.withBlobs = false;
+    }
+
+    /** Returns the remotes of this repository.
+     * Keys: remote names
+     * Values: path of the remote's .gitlet directory. */
+    @SuppressWarnings("unchecked")
+    static HashMap<String, String> remotes() {
+        if (!REMOTES_FILE.isFile()) {
+            return new HashMap<String, String>();
+        }
+        return Utils.readObject(REMOTES_FILE, HashMap.class);
+    }
+
+    /** Returns the .gitlet directory of remote NAME, exiting with an error
+     * if there is no such remote or it cannot be found. */
+    static File remoteDir(String name) {
+        String path = remotes().get(name);
+        File dir = path == null ? null : new File(path);
+        if (dir == null || !dir.isDirectory()) {
+            throw Utils.error("Remote directory not found.");
+        }
+        return dir;
+    }
+
+    /** Returns the object format of the repository at GITLETDIR. */
+    @SuppressWarnings("unchecked")
+    static String objectFormat(File gitletDir) {
+        File config = Utils.join(gitletDir, Config.CONFIG_FILE.getName());
+        if (config.isFile()) {
+            HashMap<String, String> settings =
+                    Utils.readObject(config, HashMap.class);
+            String format = settings.get(HashEngine.OBJECT_FORMAT);
+            if (format != null) {
+                return format;
+            }
+        }
+        return HashEngine.SHA1.getName();
+    }
+
+    /** Returns the commit CODE of the repository at GITLETDIR, or null. */
+    static Commit readCommit(File gitletDir, String code) {
+        return ObjectStore.read(dir(gitletDir, COMMIT), code, Commit.class);
+    }
+
+    /** Returns true if commit ANCESTOR is CODE or one of its ancestors in
+     * the repository at GITLETDIR. The walk stops at ANCESTOR. */
+    static boolean isAncestor(File gitletDir, String ancestor, String code) {
+        while (code != null) {
+            if (code.equals(ancestor)) {
+                return true;
+            }
+            code = readCommit(gitletDir, code).getParentCode();
+        }
+        return false;
+    }
+
+    /** Send every object reachable from commit TIP that the receiving side
+     * lacks. Returns the number of objects sent. */
+    int send(String tip) {
+        if (!objectFormat(this.from).equals(objectFormat(this.to))) {
+            throw Utils.error("Repositories use different object formats.");
+        }
+        negotiate(tip);
+        if (this.missing.isEmpty()) {
+            return 0;
+        }
+        try {
+            PipedInputStream sink = new PipedInputStream(1 << 16);
+            PipedOutputStream source = new PipedOutputStream(sink);
+            IOException[] failure = new IOException[1];
+            Thread sender = new Thread(() -> {
+                try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(source))) {
+                    writeBundle(out);
+                } catch (IOException excp) {
+                    failure[0] = excp;
+                }
+            });
+            sender.start();
+            int received;
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(sink))) {
+                received = readBundle(in);
+            }
+            sender.join();
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            return received;
+        } catch (IOException | InterruptedException excp) {
+            throw Utils.error("Transfer failed: %s", excp.getMessage());
+        }
+    }
+
+    /** Find the objects reachable from TIP that the receiving side lacks,
+     * walking back only until a commit it already has. */
+    private void negotiate(String tip) {
+        if (this.withBlobs && (this.from.equals(Repo.GITLET_DIR)
+                || Bitmaps.exist(this.from))) {
+            negotiateWithBitmaps(tip);
+            return;
+        }
+        ArrayList<Entry> commits = new ArrayList<Entry>();
+        String code = tip;
+        while (code != null && !has(COMMIT, code)) {
+            Commit commit = readCommit(this.from, code);
+            commits.add(new Entry(COMMIT, code));
+            if (this.withBlobs) {
+                for (String blobCode : commit.getTracked().values()) {
+                    if (this.seen.add(blobCode) && !has(BLOB, blobCode)) {
+                        addBlob(blobCode);
+                    }
+                }
+            }
+            code = commit.getParentCode();
+        }
+        this.missing.addAll(commits);
+    }
+
+    /** Find the objects reachable from TIP that the receiving side lacks
+     * as the difference of the sender's reachability bitmaps for TIP and
+     * for the receiver's branches. */
+    private void negotiateWithBitmaps(String tip) {
+        Bitmaps bitmaps = new Bitmaps(this.from);
+        ArrayList<String> haves = new ArrayList<String>();
+        for (String code : new RefStore(this.to).tips()) {
+            if (ObjectStore.contains(dir(this.from, COMMIT), code)) {
+                haves.add(code);
+            }
+        }
+        BitSet wanted = bitmaps.reachable(tip);
+        wanted.andNot(bitmaps.reachable(haves));
+
+        ArrayList<Entry> commits = new ArrayList<Entry>();
+        for (int n = wanted.nextSetBit(0); n >= 0;
+             n = wanted.nextSetBit(n + 1)) {
+            String code = bitmaps.code(n);
+            if (bitmaps.tag(n) == COMMIT) {
+                if (!has(COMMIT, code)) {
+                    commits.add(new Entry(COMMIT, code));
+                }
+            } else if (this.seen.add(code) && !has(BLOB, code)) {
+                addBlob(code);
+            }
+        }
+        this.missing.addAll(commits);
+    }
+
+    /** Add blob CODE, and any of its chunks the receiver lacks, to the
+     * missing objects. */
+    private void addBlob(String code) {
+        Blob blob = ObjectStore.read(dir(this.from, BLOB), code, Blob.class);
+        if (blob == null && this.from.equals(Repo.GITLET_DIR)) {
+            blob = Blob.read(code);
+        }
+        if (blob == null) {
+            throw Utils.error("Blob %s not found.", code);
+        }
+        if (blob.getChunks() != null) {
+            for (String chunk : blob.getChunks()) {
+                if (this.seen.add(chunk) && !has(CHUNK, chunk)) {
+                    this.missing.add(new Entry(CHUNK, chunk));
+                }
+            }
+        }
+        this.missing.add(new Entry(BLOB, code));
+    }
+
+    /** Returns true if the receiving side has object CODE of kind TAG. */
+    private boolean has(byte tag, String code) {
+        return ObjectStore.contains(dir(this.to, tag), code);
+    }
+
+    /** Write the missing objects as a bundle to OUT. */
+    private void writeBundle(DataOutputStream out) throws IOException {
+        for (Entry entry : this.missing) {
+            byte[] contents = ObjectStore.readContents(
+                    dir(this.from, entry.tag), entry.code);
+            out.writeByte(entry.tag);
+            out.writeUTF(entry.code);
+            out.writeInt(contents.length);
+            out.write(contents);
+        }
+        out.writeByte(END);
+    }
+
+    /** Store the objects of the bundle read from IN on the receiving side
+     * through ObjectWriter, flushing the blobs and chunks before the first
+     * commit and the commits at the end, so all are on disk before any ref
+     * names them. Returns the number of objects read. */
+    private int readBundle(DataInputStream in) throws IOException {
+        int count = 0;
+        boolean commits = false;
+        for (byte tag = in.readByte(); tag != END; tag = in.readByte()) {
+            String code = in.readUTF();
+            byte[] contents = new byte[in.readInt()];
+            in.readFully(contents);
+            if (tag == COMMIT && !commits) {
+                ObjectWriter.flush();
+                commits = true;
+            }
+            ObjectWriter.write(dir(this.to, tag), code, contents);
+            count += 1;
+        }
+        ObjectWriter.flush();
+        return count;
+    }
+
+    /** Returns the object directory for objects of kind TAG in the
+     * repository at GITLETDIR. */
+    static File dir(File gitletDir, byte tag) {
+        switch (tag) {
+        case COMMIT:
+            return Utils.join(gitletDir, Repo.COMMIT_DIR.getName());
+        case BLOB:
+            return Utils.join(gitletDir, Repo.BLOBS_DIR.getName());
+        case CHUNK:
+            return Utils.join(gitletDir, Repo.CHUNKS_DIR.getName());
+        default:
+            throw Utils.error("Bad object tag %c.", (char) tag);
+        }
+    }
+}
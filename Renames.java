@@ -0,0 +1,249 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.function.Function;
+
+/** Rename and copy detection by content similarity.
+ *
+ * Each file is reduced to the set of hashes of its lines, with long lines
+ * cut every MAX_SHINGLE bytes, and that set to a MinHash signature: the
+ * smallest value of each of HASHES hash functions over it. The fraction of
+ * equal positions in two signatures estimates the overlap of the two sets.
+ * Signatures are cached by blob hashcode, and split into BANDS bands so
+ * only files sharing a whole band are ever compared, which keeps detection
+ * near-linear in the number of files. Empty files and files of at least
+ * core.largeFileThreshold bytes are only matched when identical.
+ *
+ * @author Nitin Nazeer
+ */
+public class Renames {
+
+    /** The directory of cached signatures, by blob hashcode. */
+    static final File SIGNATURE_DIR = Utils.join(Repo.GITLET_DIR, "minhash");
+
+    /** Number of hash functions in a signature. */
+    static final int HASHES = 64;
+
+    /** Number of bands a signature is split into for bucketing. */
+    static final int BANDS = 32;
+
+    /** Lines longer than this many bytes are cut into several shingles. */
+    static final int MAX_SHINGLE = 64;
+
+    /** Config key that, when true, makes status look for copies as well
+     * as renames. */
+    static final String FIND_COPIES = "status.findCopies";
+
+    /** Pairs less similar than this percentage are not reported. */
+    static final int MIN_SIMILARITY = 50;
+
+    /** A file found to be a rename or copy of another. */
+    public static class Pair {
+        /** The name of the original file. */
+        final String source;
+
+        /** The name of the new file. */
+        final String target;
+
+        /** Estimated similarity, as a percentage. */
+        final int similarity;
+
+        /** True if the source still exists, false for a rename. */
+        final boolean copy;
+
+        /** SOURCE renamed or, if COPY, copied to TARGET with SIMILARITY. */
+        Pair(String source, String target, int similarity, boolean copy) {
+            this.source = source;
+            this.target = target;
+            this.similarity = similarity;
+            this.copy = copy;
+        }
+
+        /** Returns the name of the original file. */
+        public String getSource() {
+            return this.source;
+        }
+
+        /** Returns the name of the new file. */
+        public String getTarget() {
+            return this.target;
+        }
+
+        /** Returns the estimated similarity, as a percentage. */
+        public int getSimilarity() {
+            return this.similarity;
+        }
+
+        /** Returns true if the source still exists, false for a rename. */
+        public boolean isCopy() {
+            return this.copy;
+        }
+
+        @Override
+        public String toString() {
+            return this.source + " -> " + this.target + " ("
+                    + (this.copy ? "copied" : "renamed") + ", "
+                    + this.similarity + "%)";
+        }
+    }
+
+    /** Returns the files of ADDED that are renames of files of DELETED or
+     * copies of files of DELETED or KEPT, most similar first. Each map
+     * takes filenames to blob hashcodes; CONTENTS gives the contents of a
+     * hashcode. A deleted file is renamed at most once, and is a copy
+     * source after that. */
+    static ArrayList<Pair> detect(Map<String, String> deleted,
+                                  Map<String, String> kept,
+                                  Map<String, String> added,
+                                  Function<String, String> contents) {
+        HashMap<String, String> sources = new HashMap<String, String>(kept);
+        sources.putAll(deleted);
+        HashMap<String, ArrayList<String>> buckets =
+                new HashMap<String, ArrayList<String>>();
+        HashMap<String, long[]> signatures = new HashMap<String, long[]>();
+        for (String name : sources.keySet()) {
+            long[] sig = signature(sources.get(name), contents);
+            signatures.put(name, sig);
+            for (String key : bandKeys(sources.get(name), sig)) {
+                buckets.computeIfAbsent(key, k -> new ArrayList<String>())
+                        .add(name);
+            }
+        }
+
+        ArrayList<Pair> candidates = new ArrayList<Pair>();
+        for (String target : added.keySet()) {
+            String code = added.get(target);
+            long[] sig = signature(code, contents);
+            HashSet<String> compared = new HashSet<String>();
+            for (String key : bandKeys(code, sig)) {
+                for (String source : buckets.getOrDefault(key,
+                        new ArrayList<String>())) {
+                    if (!compared.add(source)) {
+                        continue;
+                    }
+                    int similarity = sources.get(source).equals(code) ? 100
+                            : similarity(sig, signatures.get(source));
+                    if (similarity >= MIN_SIMILARITY) {
+                        candidates.add(new Pair(source, target, similarity,
+                                !deleted.containsKey(source)));
+                    }
+                }
+            }
+        }
+        Collections.sort(candidates, (x, y) -> x.similarity != y.similarity
+                ? y.similarity - x.similarity
+                : x.copy != y.copy ? (x.copy ? 1 : -1)
+                : (x.source + x.target).compareTo(y.source + y.target));
+
+        ArrayList<Pair> result = new ArrayList<Pair>();
+        HashSet<String> matched = new HashSet<String>();
+        HashSet<String> renamed = new HashSet<String>();
+        for (Pair pair : candidates) {
+            if (matched.add(pair.target)) {
+                boolean copy = pair.copy || !renamed.add(pair.source);
+                result.add(new Pair(pair.source, pair.target,
+                        pair.similarity, copy));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the signature of blob CODE, from the cache or computed from
+     * its contents as given by CONTENTS. An empty or large blob gets
+     * null, and is only matched when identical. */
+    static long[] signature(String code, Function<String, String> contents) {
+        File f = ObjectStore.locate(SIGNATURE_DIR, code);
+        if (f != null) {
+            ByteBuffer cached = ByteBuffer.wrap(Utils.readContents(f));
+            long[] result = new long[HASHES];
+            cached.asLongBuffer().get(result);
+            return result;
+        }
+        String text = contents.apply(code);
+        if (text == null || text.isEmpty()
+                || text.length() >= Blob.largeFileThreshold()) {
+            return null;
+        }
+        long[] result = new long[HASHES];
+        Arrays.fill(result, Long.MAX_VALUE);
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int start = 0;
+        for (int i = 0; i <= bytes.length; i += 1) {
+            if (i == bytes.length || bytes[i] == '\n'
+                    || i - start == MAX_SHINGLE) {
+                if (i > start) {
+                    long shingle = fnv(bytes, start, i);
+                    for (int k = 0; k < HASHES; k += 1) {
+                        result[k] = Math.min(result[k], mix(shingle, k));
+                    }
+                }
+                start = i < bytes.length && bytes[i] == '\n' ? i + 1 : i;
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(8 * HASHES);
+        out.asLongBuffer().put(result);
+        ObjectStore.writeContents(SIGNATURE_DIR, code, out.array());
+        return result;
+    }
+
+    /** Returns the estimated similarity of signatures A and B, as a
+     * percentage. */
+    static int similarity(long[] a, long[] b) {
+        if (a == null || b == null) {
+            return 0;
+        }
+        int same = 0;
+        for (int k = 0; k < HASHES; k += 1) {
+            if (a[k] == b[k]) {
+                same += 1;
+            }
+        }
+        return 100 * same / HASHES;
+    }
+
+    /** Returns the bucket keys of blob CODE with signature SIG: one per
+     * band, or just the hashcode itself if there is no signature. */
+    private static ArrayList<String> bandKeys(String code, long[] sig) {
+        ArrayList<String> result = new ArrayList<String>();
+        if (sig == null) {
+            result.add("=" + code);
+            return result;
+        }
+        int rows = HASHES / BANDS;
+        for (int band = 0; band < BANDS; band += 1) {
+            long h = band;
+            for (int k = band * rows; k < (band + 1) * rows; k += 1) {
+                h = mix(h ^ sig[k], band);
+            }
+            result.add(band + ":" + Long.toHexString(h));
+        }
+        return result;
+    }
+
+    /** Returns the 64-bit FNV-1a hash of BYTES[START..END). */
+    private static long fnv(byte[] bytes, int start, int end) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i += 1) {
+            h ^= bytes[i] & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /** Returns X scrambled by the K-th hash function, a splitmix64
+     * finalizer of X offset by a per-function constant. */
+    private static long mix(long x, int k) {
+        long z = x + (k + 1) * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,241 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+
+/** Commits replayed onto a tip entirely in memory, as by cherry-pick and
+ * rebase. Each replayed commit is the three-way merge of its changes into
+ * the tracked files of the tip, keeping its message and time: only the
+ * files it changed relative to its parent are looked at, a file changed on
+ * one side only is taken from that side, and a file changed on both is
+ * merged line by line. Only the new
+ * commits and merged blobs are written; the working tree and the staging
+ * area are left alone for the caller to bring up to date once at the end.
+ * A conflict stops the replay before any branch moves.
+ *
+ * @author Nitin Nazeer
+ */
+public class Replay {
+
+    /** The commit the next replayed commit goes on top of. */
+    private Commit tip;
+
+    /** The hashcode of tip. */
+    private String tipCode;
+
+    /** The number of commits replayed so far. */
+    private int applied;
+
+    /** Replay commits on top of commit TIP, whose hashcode is TIPCODE. */
+    Replay(Commit tip, String tipCode) {
+        this.tip = tip;
+        this.tipCode = tipCode;
+    }
+
+    /** Returns the commit replayed commits now go on top of. */
+    Commit tip() {
+        return this.tip;
+    }
+
+    /** Returns the hashcode of tip(). */
+    String tipCode() {
+        return this.tipCode;
+    }
+
+    /** Returns the number of commits replayed, not counting those that
+     * changed nothing. */
+    int applied() {
+        return this.applied;
+    }
+
+    /** Replay commit PICK, whose hashcode is CODE, on top of the tip with
+     * the same message, and make the new commit the tip. Returns false,
+     * leaving the tip as it was, if PICK changes nothing the tip does not
+     * already have. */
+    boolean apply(Commit pick, String code) {
+        if (pick.getParentCode() == null) {
+            throw Utils.error("Cannot replay the initial commit.");
+        }
+        HashMap<String, String> base = pick.getParent().getTracked();
+        HashMap<String, String> theirs = pick.getTracked();
+        HashMap<String, String> ours = this.tip.getTracked();
+        HashSet<String> names = new HashSet<String>(base.keySet());
+        names.addAll(theirs.keySet());
+
+        Commit next = new Commit(pick.getMessage(), this.tipCode, this.tip,
+                pick.getTimestamp());
+        ArrayList<String> changed = new ArrayList<String>();
+        for (String filename : names) {
+            String from = base.get(filename);
+            String to = theirs.get(filename);
+            if (Objects.equals(from, to)) {
+                continue;
+            }
+            String had = ours.get(filename);
+            String merged = merge(filename, from, had, to, code);
+            if (Objects.equals(merged, had)) {
+                continue;
+            }
+            if (merged == null) {
+                next.getTracked().remove(filename);
+            } else {
+                next.getTracked().put(filename, merged);
+            }
+            changed.add(filename);
+        }
+        if (changed.isEmpty()) {
+            return false;
+        }
+        next.setChangedPaths(changed);
+        next.saveCommit();
+        this.tip = next;
+        this.tipCode = next.code();
+        this.applied += 1;
+        return true;
+    }
+
+    /** Returns the hashcode of the blob of FILENAME merging the change
+     * from blob BASE to blob THEIRS into blob OURS, any of them null for a
+     * file that is absent, or null if the merge removes the file. Throws
+     * if the changes conflict, naming commit CODE. */
+    private static String merge(String filename, String base, String ours,
+                                String theirs, String code) {
+        if (Objects.equals(ours, theirs) || Objects.equals(base, ours)) {
+            return theirs;
+        }
+        if (base != null && ours != null && theirs != null) {
+            Blob baseBlob = Blob.read(base);
+            Blob ourBlob = Blob.read(ours);
+            Blob theirBlob = Blob.read(theirs);
+            if (baseBlob.getChunks() == null && ourBlob.getChunks() == null
+                    && theirBlob.getChunks() == null) {
+                String merged = mergeLines(baseBlob.getContents(),
+                        ourBlob.getContents(), theirBlob.getContents());
+                if (merged != null) {
+                    Blob result = Blob.fromBytes(
+                            merged.getBytes(StandardCharsets.UTF_8));
+                    result.saveBlob();
+                    return result.code();
+                }
+            }
+        }
+        throw Utils.error("Conflict in %s while applying %s; nothing was"
+                + " changed.", filename, code.substring(0, 8));
+    }
+
+    /** Returns the three-way merge of the lines of OURS and THEIRS, both
+     * edits of BASE, or null if they change the same lines differently.
+     * Lines that match in all three are kept, and each stretch between
+     * them is taken from whichever side changed it. */
+    static String mergeLines(String base, String ours, String theirs) {
+        String[] b = split(base);
+        String[] o = split(ours);
+        String[] t = split(theirs);
+        int[] toOurs = matches(b, o);
+        int[] toTheirs = matches(b, t);
+        StringBuilder result = new StringBuilder();
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < b.length || j < o.length || k < t.length) {
+            if (i < b.length && toOurs[i] == j && toTheirs[i] == k) {
+                result.append(b[i]);
+                i += 1;
+                j += 1;
+                k += 1;
+                continue;
+            }
+            int next = i;
+            while (next < b.length
+                    && (toOurs[next] < 0 || toTheirs[next] < 0)) {
+                next += 1;
+            }
+            int ourEnd = next < b.length ? toOurs[next] : o.length;
+            int theirEnd = next < b.length ? toTheirs[next] : t.length;
+            String[] baseRun = Arrays.copyOfRange(b, i, next);
+            String[] ourRun = Arrays.copyOfRange(o, j, ourEnd);
+            String[] theirRun = Arrays.copyOfRange(t, k, theirEnd);
+            if (Arrays.equals(baseRun, ourRun)
+                    || Arrays.equals(ourRun, theirRun)) {
+                append(result, theirRun);
+            } else if (Arrays.equals(baseRun, theirRun)) {
+                append(result, ourRun);
+            } else {
+                return null;
+            }
+            i = next;
+            j = ourEnd;
+            k = theirEnd;
+        }
+        return result.toString();
+    }
+
+    /** Returns, for each of the lines A, the index of the line of B it is
+     * kept as by a shortest diff, or -1 if it is deleted. */
+    private static int[] matches(String[] a, String[] b) {
+        int[] result = new int[a.length];
+        Arrays.fill(result, -1);
+        Diff.diff(a, b, new Diff.Listener() {
+            @Override
+            public void equal(int x, int y) {
+                result[x] = y;
+            }
+
+            @Override
+            public void delete(int x) {
+            }
+
+            @Override
+            public void insert(int y) {
+            }
+        });
+        return result;
+    }
+
+    /** Split CONTENTS into lines, each keeping its newline, so that
+     * joining them gives back CONTENTS exactly. */
+    private static String[] split(String contents) {
+        ArrayList<String> result = new ArrayList<String>();
+        int start = 0;
+        for (int i = 0; i < contents.length(); i += 1) {
+            if (contents.charAt(i) == '\n') {
+                result.add(contents.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < contents.length()) {
+            result.add(contents.substring(start));
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    /** Append LINES to OUT. */
+    private static void append(StringBuilder out, String[] lines) {
+        for (String line : lines) {
+            out.append(line);
+        }
+    }
+
+    /** Returns the filenames whose blobs differ between the tracked files
+     * BEFORE and AFTER. */
+    static ArrayList<String> changes(Map<String, String> before,
+                                     Map<String, String> after) {
+        ArrayList<String> result = new ArrayList<String>();
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            if (!entry.getValue().equals(after.get(entry.getKey()))) {
+                result.add(entry.getKey());
+            }
+        }
+        for (String filename : after.keySet()) {
+            if (!before.containsKey(filename)) {
+                result.add(filename);
+            }
+        }
+        return result;
+    }
+}
@@ -2,9 +2,20 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
 import static gitlet.Utils.error;
 
 /** A Repo class representing all the data structures and methods associated
@@ -26,13 +37,19 @@ public class Repo {
     /** The file object repr of the blobs directory. */
     static final File BLOBS_DIR = Utils.join(GITLET_DIR, "blobs");
 
-    /** The file object repr of the add file. */
+    /** The file object repr of the chunks directory. */
+    static final File CHUNKS_DIR = Utils.join(GITLET_DIR, "chunks");
+
+    /** The file object repr of the add file, where older versions kept the
+     * staging area for addition. */
     static final File ADD_FILE = Utils.join(GITLET_DIR, "add");
 
-    /** The file object repr of the remove file. */
+    /** The file object repr of the remove file, where older versions kept
+     * the staging area for removal. */
     static final File REM_FILE = Utils.join(GITLET_DIR, "remove");
 
-    /** The file object repr of the branches file. */
+    /** The file object repr of the branches file, where older versions
+     * kept every branch in one serialized map. */
     static final File BRANCHES_FILE = Utils.join(GITLET_DIR, "branches");
 
     /** The file object repr of the active file. */
@@ -41,15 +58,8 @@ public class Repo {
     /** The file object repr of the HEAD file. */
     static final File HEAD_FILE = Utils.join(GITLET_DIR, "head");
 
-    /** A hashmap that represents the staging area for addition.
-     * Keys: filename to be committed
-     * Values: hashcode of the file's associated blob. */
-    private HashMap<String, String> addition;
-
-    /** A hashmap that represents the staging area for addition.
-     * Keys: filename to be committed
-     * Values: hashcode of the file's associated blob. */
-    private ArrayList<String> removal;
+    /** The staging area for addition and removal. */
+    private StagingArea staging;
 
     /** hashcode that points to the HEAD commit. */
     private String head;
@@ -57,8 +67,8 @@ public class Repo {
     /** Name of the currently active branch. */
     private String activeBranch;
 
-    /** hashmap that stores branch names and the corresponding hashmap. */
-    private HashMap<String, String> branches;
+    /** The branches: names and the hashcodes of their tips. */
+    private RefStore refs;
 
     /** Ensures .gitlet exists, then loads addition, removal, HEAD, and master.
      * */
@@ -71,7 +81,7 @@ public class Repo {
 
     /** Return the hash of the active branch. */
     public String getActiveBranchHash() {
-        return this.branches.get(this.activeBranch);
+        return this.refs.get(this.activeBranch);
     }
 
     /** Given a hashcode stub, finds and returns the matching hashcode from the
@@ -79,32 +89,37 @@ public class Repo {
      *
      * @param stub An abbreviated version of a hashcode. */
     public String findHash(String stub) {
-        for (String filename : Utils.plainFilenamesIn(COMMIT_DIR)) {
-            if (filename.contains(stub)) {
-                return filename;
-            }
-        }
-        return null;
+        return ObjectStore.expand(COMMIT_DIR, stub);
     }
 
-    /** Returns the HEAD commit, otherwise returns null.*/
+    /** Returns the HEAD commit. */
     public Commit getHead() {
-        File f = Utils.join(COMMIT_DIR, this.head);
-        if (f.exists()) {
-            return Utils.readObject(f, Commit.class);
+        Commit result = ObjectStore.read(COMMIT_DIR, this.head, Commit.class);
+        if (result == null) {
+            throw error("Head commit %s not found.", this.head);
         }
-        System.out.println("head not found");
-        return null;
+        return result;
     }
 
-    /** Returns the master commit, otherwise returns null.*/
+    /** Returns the tip commit of the active branch. */
     public Commit getActiveBranch() {
-        File f = Utils.join(COMMIT_DIR, getActiveBranchHash());
-        if (f.exists()) {
-            return Utils.readObject(f, Commit.class);
+        Commit result = ObjectStore.read(COMMIT_DIR, getActiveBranchHash(),
+                Commit.class);
+        if (result == null) {
+            throw error("Active branch not found.");
         }
-        System.out.println("Active branch not found.");
-        return null;
+        return result;
+    }
+
+    /** Returns the name of the active branch. */
+    public String getActiveBranchName() {
+        return this.activeBranch;
+    }
+
+    /** Returns the branches whose names start with PREFIX, in order of
+     * name, with the hashcodes of their tips. */
+    public Iterable<Map.Entry<String, String>> getBranches(String prefix) {
+        return this.refs.list(prefix);
     }
 
     /** Gets the commit with the given hashcode, returns null if it
@@ -115,107 +130,180 @@ public class Repo {
         if (code == null) {
             return null;
         }
-        File f = Utils.join(COMMIT_DIR, code);
-        if (f.exists()) {
-            return Utils.readObject(f, Commit.class);
+        return ObjectStore.read(COMMIT_DIR, code, Commit.class);
+    }
+
+    /** Gets the blob with the given hashcode, returns null if it
+     * doesn't exist.
+     *
+     * @param code the full hashcode of the blob. */
+    public Blob getBlob(String code) {
+        if (code == null) {
+            return null;
         }
-        return null;
+        return Blob.read(code);
     }
 
-    /** loadData from the .gitlet folder. addition hashmap, removal hashmap
+    /** loadData from the .gitlet folder: the staging area,
      * HEAD, and master. Assumes .gitlet exists. */
-    @SuppressWarnings("unchecked")
     public void loadData() {
-        this.addition = Utils.readObject(ADD_FILE, HashMap.class);
-        this.removal = Utils.readObject(REM_FILE, ArrayList.class);
+        this.staging = StagingArea.load();
         this.head = Utils.readObject(HEAD_FILE, String.class);
         this.activeBranch = Utils.readObject(ACTIVE_FILE, String.class);
-        this.branches = Utils.readObject(BRANCHES_FILE, HashMap.class);
+        this.refs = new RefStore(GITLET_DIR);
     }
 
     /** If already a repo, errors and prints message.
      *
      * make .gitlet, make addition and removal hashmaps, make commits and blobs
-     * directories create commit 0, set master and HEAD. */
-    public void init() throws IOException {
+     * directories create commit 0, set master and HEAD. The object format
+     * is recorded in the config before any object is hashed.
+     *
+     * @param objectFormat the name of the hash engine, e.g. sha256. */
+    public void init(String objectFormat) {
         File probe = Utils.join(CWD, ".gitlet");
         if (probe.exists() && probe.isDirectory()) {
-            exitWithError("A Gitlet version-control system already exists in "
+            throw error("A Gitlet version-control system already exists in "
                     + "the current directory.");
         }
+        HashEngine engine = HashEngine.forName(objectFormat);
 
 
         GITLET_DIR.mkdir();
         COMMIT_DIR.mkdir();
         BLOBS_DIR.mkdir();
+        CHUNKS_DIR.mkdir();
+        Config.set(HashEngine.OBJECT_FORMAT, engine.getName());
 
 
 
         Commit initial = new Commit();
         initial.saveCommit();
+        ObjectWriter.flush();
 
 
         this.activeBranch = "master";
-        this.branches = new HashMap<String, String>();
-        this.branches.put(this.activeBranch, initial.code());
+        this.refs = new RefStore(GITLET_DIR);
+        this.refs.put(this.activeBranch, initial.code());
         this.head = initial.code();
 
-        Utils.writeObject(BRANCHES_FILE, this.branches);
         Utils.writeObject(HEAD_FILE, this.head);
         Utils.writeObject(ACTIVE_FILE, this.activeBranch);
 
 
-        this.addition = new HashMap<String, String>();
-        this.removal = new ArrayList<String>();
+        this.staging = StagingArea.load();
+        this.staging.clear();
 
+    }
 
-        Utils.writeObject(ADD_FILE, this.addition);
-        Utils.writeObject(REM_FILE, this.removal);
+    /** Make this directory a copy of the repository whose .gitlet directory
+     * is at PATH, and check out its active branch. A partial clone copies
+     * commits and branches only; blobs are fetched from PATH when first
+     * needed.
+     *
+     * @param path the path of the origin's .gitlet directory.
+     * @param blobless true for a partial clone. */
+    public void clone(String path, boolean blobless) {
+        if (GITLET_DIR.isDirectory()) {
+            throw error("A Gitlet version-control system already exists in "
+                    + "the current directory.");
+        }
+        File origin = new File(path.replace('/', File.separatorChar));
+        if (!Utils.join(origin, HEAD_FILE.getName()).isFile()) {
+            throw error("Remote directory not found.");
+        }
 
+        GITLET_DIR.mkdir();
+        COMMIT_DIR.mkdir();
+        BLOBS_DIR.mkdir();
+        CHUNKS_DIR.mkdir();
+        Config.set(HashEngine.OBJECT_FORMAT, Remote.objectFormat(origin));
+        if (blobless) {
+            Config.set(Promisor.PROMISOR, origin.getAbsolutePath());
+        }
+        HashMap<String, String> remotes = new HashMap<String, String>();
+        remotes.put("origin", origin.getPath());
+        Utils.writeObject(Remote.REMOTES_FILE, remotes);
+
+        this.refs = new RefStore(GITLET_DIR);
+        for (Map.Entry<String, String> branch
+                 : new RefStore(origin).list("")) {
+            Remote transfer = new Remote(origin, GITLET_DIR);
+            if (blobless) {
+                transfer.skipBlobs();
+            }
+            transfer.send(branch.getValue());
+            this.refs.put(branch.getKey(), branch.getValue());
+        }
+        this.refs.pack();
+        this.activeBranch = Utils.readObject(
+                Utils.join(origin, ACTIVE_FILE.getName()), String.class);
+        this.head = this.refs.get(this.activeBranch);
+        Utils.writeObject(HEAD_FILE, this.head);
+        Utils.writeObject(ACTIVE_FILE, this.activeBranch);
+        this.staging = StagingArea.load();
+        this.staging.clear();
+
+        Commit curr = getHead();
+        Promisor.prefetch(curr.getTracked().values());
+        for (String filename : curr.getTracked().keySet()) {
+            Worktree.write(filename, curr.getBlob(filename));
+        }
     }
 
-    /** Check that the file exists. Then, compare the current file w/ the latest
-     * HEAD version of the file.
+    /** Check that the files exist. Then, compare each current file w/ the
+     * latest HEAD version of the file.
      *
      * If the same, remove that file from the staging
      * area.
      *
      * If different, make a blob for the file, and add it to staging hashmap.
+     * The blobs are written behind and flushed together before any of them
+     * is staged. A directory stands for the files under it that are not
+     * ignored; a file that is ignored and untracked is refused.
      *
-     * @param filename the name of the file to be added. */
-    public void add(String filename) {
-        File file = new File(Utils.join(CWD), filename);
-        if (!file.exists() || !file.isFile()) {
-            exitWithError("File does not exist.");
-        }
-        String currFileContents = Utils.readContentsAsString(file);
-
+     * @param filenames the names of the files to be added. */
+    public void add(String... filenames) {
+        Ignore ignore = Ignore.load();
         Commit curr = getHead();
-
-
-
-        if (curr.getTracked().containsKey(filename)) {
-            if (Utils.sha1(currFileContents).equals(
-                    curr.getTracked().get(filename))) {
-                this.addition.remove(filename);
-                this.removal.remove(filename);
-                Utils.writeObject(ADD_FILE, this.addition);
-                Utils.writeObject(REM_FILE, this.removal);
-                return;
+        TreeSet<String> files = new TreeSet<String>();
+        for (String arg : filenames) {
+            String filename = Worktree.normalize(arg);
+            File file = filename == null ? null : Worktree.file(filename);
+            if (file != null && file.isDirectory()) {
+                if (ignore.ignoredPath(filename, true)) {
+                    throw error("The path %s is ignored.", filename);
+                }
+                files.addAll(Worktree.files(filename, ignore));
+            } else if (file == null || !file.isFile()) {
+                throw error("File does not exist.");
+            } else if (ignore.ignoredPath(filename, false)
+                    && !curr.getTracked().containsKey(filename)) {
+                throw error("The path %s is ignored.", filename);
+            } else {
+                files.add(filename);
             }
         }
+        Monitor tree = Monitor.open();
 
-
-
-
-        Blob newBlob = new Blob(currFileContents);
-        newBlob.saveBlob();
-        this.addition.put(filename, newBlob.code());
-        this.removal.remove(filename);
-        Utils.writeObject(ADD_FILE, this.addition);
-        Utils.writeObject(REM_FILE, this.removal);
-
-
+        HashMap<String, String> added = new HashMap<String, String>();
+        for (String filename : files) {
+            if (curr.getTracked().containsKey(filename)) {
+                if (tree.hash(filename).equals(
+                        curr.getTracked().get(filename))) {
+                    this.staging.unstage(filename);
+                    continue;
+                }
+            }
+            Blob newBlob = Blob.fromFile(Utils.join(CWD, filename));
+            newBlob.saveBlob();
+            added.put(filename, newBlob.code());
+        }
+        ObjectWriter.flush();
+        for (String filename : added.keySet()) {
+            this.staging.add(filename, added.get(filename));
+        }
+        tree.save();
     }
 
     /** Shallow copy the HEAD commit. The next commit's parent is the curr head,
@@ -224,11 +312,11 @@ public class Repo {
      *
      * @param message the provided commit message. */
     public void commit(String message) {
-        if (this.addition.isEmpty() && this.removal.isEmpty()) {
-            exitWithError("No changes added to the commit.");
+        if (this.staging.isEmpty()) {
+            throw error("No changes added to the commit.");
         }
         if (message.equals("")) {
-            exitWithError("Please enter a commit message.");
+            throw error("Please enter a commit message.");
         }
 
         Commit curr = getHead();
@@ -237,30 +325,31 @@ public class Repo {
 
 
         Commit next = new Commit(message, curr.code(), curr);
+        HashMap<String, String> addition = this.staging.additions();
+        ArrayList<String> changed = new ArrayList<String>(addition.keySet());
+        changed.addAll(this.staging.removals());
+        next.setChangedPaths(changed);
 
 
 
-        for (String filename : this.addition.keySet()) {
-            next.getTracked().put(filename, this.addition.get(filename));
+        for (String filename : addition.keySet()) {
+            next.getTracked().put(filename, addition.get(filename));
         }
-        this.addition.clear();
 
 
-        for (String filename : this.removal) {
+        for (String filename : this.staging.removals()) {
             next.getTracked().remove(filename);
         }
-        this.removal.clear();
 
 
         next.saveCommit();
-        this.branches.put(this.activeBranch, next.code());
+        ObjectWriter.flush();
+        this.refs.put(this.activeBranch, next.code());
         this.head = next.code();
 
 
-        Utils.writeObject(BRANCHES_FILE, this.branches);
         Utils.writeObject(HEAD_FILE, this.head);
-        Utils.writeObject(ADD_FILE, this.addition);
-        Utils.writeObject(REM_FILE, this.removal);
+        this.staging.clear();
     }
 
     /** basic checkout with no hashcode. If file is not tracked, throw error.
@@ -272,8 +361,7 @@ public class Repo {
         if (currBlob == null) {
             throw error("File does not exist in that commit.");
         }
-        File currFile = Utils.join(CWD, filename);
-        Utils.writeContents(currFile, currBlob.getContents());
+        Worktree.write(filename, currBlob);
     }
 
     /** checkout to commit w given hashcode. If no commit exists or the commit
@@ -284,14 +372,13 @@ public class Repo {
     public void checkout(String commitId, String filename) {
         Commit curr = getCommit(findHash(commitId));
         if (curr == null) {
-            exitWithError("No commit with that id exists.");
+            throw error("No commit with that id exists.");
         }
         Blob currBlob = curr.getBlob(filename);
         if (currBlob == null) {
-            exitWithError("File does not exist in that commit.");
+            throw error("File does not exist in that commit.");
         }
-        File currFile = Utils.join(CWD, filename);
-        Utils.writeContents(currFile, currBlob.getContents());
+        Worktree.write(filename, currBlob);
     }
 
     /** Checkout of a full branch.
@@ -299,53 +386,70 @@ public class Repo {
      * @param newBranchName the name of the branch to checkout.
      */
     public void checkoutBranch(String newBranchName) {
+        Monitor tree = Monitor.open();
+        Sparse sparse = Sparse.load();
+        Commit active = getActiveBranch();
 
 
-
-
-        for (String filename : Utils.plainFilenamesIn(CWD)) {
-            if (filename.contains(".txt")
-                    && !getActiveBranch().getTracked().containsKey(filename)) {
-                exitWithError("There is an untracked file in the way; delete "
+        for (String filename : tree.files()) {
+            if (sparse.includes(filename)
+                    && !active.getTracked().containsKey(filename)) {
+                throw error("There is an untracked file in the way; delete "
                         + "it or add and commit it first.");
             }
         }
 
 
-        if (!this.branches.containsKey(newBranchName)) {
-            exitWithError("No such branch exists.");
+        String newTip = this.refs.get(newBranchName);
+        if (newTip == null) {
+            throw error("No such branch exists.");
         }
 
 
 
         if (this.activeBranch.equals(newBranchName)) {
-            exitWithError("No need to checkout the current branch.");
+            throw error("No need to checkout the current branch.");
         }
 
 
-        Commit newBranch = getCommit(this.branches.get(newBranchName));
-        for (String filename : Utils.plainFilenamesIn(CWD)) {
-            if (filename.contains(".txt")) {
-                Utils.restrictedDelete(filename);
+        Commit newBranch = getCommit(newTip);
+        for (String filename : working(tree, active)) {
+            if (sparse.includes(filename)) {
+                Worktree.delete(filename);
             }
         }
 
-        for (String filename : newBranch.getTracked().keySet()) {
-            checkout(this.branches.get(newBranchName), filename);
-        }
+        writeTracked(newBranch, sparse);
 
 
 
-        this.head = this.branches.get(newBranchName);
+        this.head = newTip;
         this.activeBranch = newBranchName;
         Utils.writeObject(HEAD_FILE, this.head);
         Utils.writeObject(ACTIVE_FILE, this.activeBranch);
 
 
-        this.addition.clear();
-        this.removal.clear();
-        Utils.writeObject(ADD_FILE, this.addition);
-        Utils.writeObject(REM_FILE, this.removal);
+        this.staging.clear();
+    }
+
+    /** Write the files of commit COMMIT that SPARSE includes to the
+     * working tree, fetching any blobs a partial clone lacks first.
+     *
+     * @param commit the commit whose files are written.
+     * @param sparse the sparse-checkout patterns in effect. */
+    private void writeTracked(Commit commit, Sparse sparse) {
+        ArrayList<String> codes = new ArrayList<String>();
+        for (String filename : commit.getTracked().keySet()) {
+            if (sparse.includes(filename)) {
+                codes.add(commit.getTracked().get(filename));
+            }
+        }
+        Promisor.prefetch(codes);
+        for (String filename : commit.getTracked().keySet()) {
+            if (sparse.includes(filename)) {
+                Worktree.write(filename, commit.getBlob(filename));
+            }
+        }
     }
 
     /** Unstage file if currently staged for addition. If file currently
@@ -356,132 +460,202 @@ public class Repo {
         Commit curr = getHead();
 
 
-        if (!this.addition.containsKey(filename)
+        if (!this.staging.additions().containsKey(filename)
                 && !curr.getTracked().containsKey(filename)) {
-            exitWithError("No reason to remove the file.");
-        }
-
-
-        if (this.addition.containsKey(filename)) {
-            this.addition.remove(filename);
+            throw error("No reason to remove the file.");
         }
 
 
 
         if (curr.getTracked().containsKey(filename)) {
-            this.removal.add(filename);
-            File delFile = Utils.join(CWD, filename);
-            Utils.restrictedDelete(delFile);
+            this.staging.remove(filename);
+            Worktree.delete(filename);
+        } else {
+            this.staging.unstage(filename);
         }
+    }
 
-
-
-        Utils.writeObject(ADD_FILE, this.addition);
-        Utils.writeObject(REM_FILE, this.removal);
+    /** Returns every commit ever made, read as iterated, in order of
+     * hashcode. */
+    public Iterable<Commit> globalLog() {
+        List<String> codes = ObjectStore.list(COMMIT_DIR);
+        return () -> codes.stream().map(this::getCommit).iterator();
     }
 
-    /** Display log information about all commits ever made, order doesn't
-     * matter. */
-    public void globalLog() {
-        for (String filename : Utils.plainFilenamesIn(COMMIT_DIR)) {
-            Commit curr = getCommit(filename);
-            String msg = "";
-            msg += "===\n";
-            msg += "commit " + curr.code() + "\n";
-            msg += "Date: "
-                    + curr.getTimestampRepr()
-                    + "\n";
-            msg += curr.getMessage() + "\n";
-            System.out.println(msg);
+    /** Returns the lines matching the regular expression PATTERN in the
+     * files of the commits COMMITIDS, or of every commit in the history of
+     * HEAD if there are none, by commit as given or from the newest, then
+     * by filename and line. Each distinct blob is scanned once, in
+     * parallel, before this returns; the commits are read again as the
+     * result is iterated.
+     *
+     * @param pattern the regular expression to find.
+     * @param commitIds the hashcodes of the commits, possibly
+     * abbreviated. */
+    public Iterable<Grep.Match> grep(String pattern, String... commitIds) {
+        Grep grep = new Grep(pattern);
+        ArrayList<String> codes = new ArrayList<String>();
+        HashSet<String> blobs = new HashSet<String>();
+        if (commitIds.length == 0) {
+            for (String code = this.head; code != null; ) {
+                Commit commit = getCommit(code);
+                codes.add(code);
+                blobs.addAll(commit.getTracked().values());
+                code = commit.getParentCode();
+            }
+        }
+        for (String commitId : commitIds) {
+            String code = findHash(commitId);
+            Commit commit = getCommit(code);
+            if (commit == null) {
+                throw error("No commit with that id exists.");
+            }
+            codes.add(code);
+            blobs.addAll(commit.getTracked().values());
         }
+        Promisor.prefetch(blobs);
+        grep.scan(blobs);
+        return () -> codes.stream().flatMap(code ->
+                grep.matches(code, getCommit(code)).stream()).iterator();
     }
 
-    /** Print hashcode of all commits with the given message.
+    /** Returns the hashcodes of all commits with the given message, in
+     * order.
      *
      * @param message the message to find. */
-    public void find(String message) {
-        boolean found = false;
-        for (String filename : Utils.plainFilenamesIn(COMMIT_DIR)) {
-            Commit curr = getCommit(filename);
+    public List<String> find(String message) {
+        ArrayList<String> result = new ArrayList<String>();
+        for (String code : ObjectStore.list(COMMIT_DIR)) {
+            Commit curr = getCommit(code);
             if (curr.getMessage().equals(message)) {
-                System.out.println(filename);
-                found = true;
+                result.add(code);
             }
         }
-        if (!found) {
-            exitWithError("Found no commit with that message.");
-        }
+        return result;
     }
 
-    /** Print the branches and the files staged for addition and removal. */
-    public void status() {
-        System.out.println("=== Branches ===");
-        Object[] branchKeys = this.branches.keySet().toArray();
-        Arrays.sort(branchKeys);
-        for (Object branchName : branchKeys) {
-            if (this.activeBranch.equals(branchName)) {
-                System.out.print("*");
+    /** Returns the branches, the files staged for addition and removal,
+     * the unstaged changes to the working tree and the renames among
+     * them. */
+    public Status status() {
+        Iterable<String> branchNames = () -> {
+            Iterator<Map.Entry<String, String>> entries =
+                    this.refs.list("").iterator();
+            return new Iterator<String>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    return entries.next().getKey();
+                }
+            };
+        };
+        Status result = new Status(branchNames, this.activeBranch);
+        result.staged.addAll(this.staging.additions().keySet());
+        result.removed.addAll(this.staging.removals());
+
+        Commit curr = getHead();
+        Monitor tree = Monitor.open();
+        TreeSet<String> working = working(tree, curr);
+        for (String filename : working) {
+            if (curr.getTracked().containsKey(filename)
+                    && !tree.hash(filename).equals(
+                    curr.getTracked().get(filename))) {
+                result.modified.add(filename);
             }
-            System.out.println(branchName);
         }
-        System.out.println();
-
-        System.out.println("=== Staged Files ===");
-        Object[] addKeys = this.addition.keySet().toArray();
-        Arrays.sort(addKeys);
-        for (Object filename : addKeys) {
-            System.out.println(filename);
+        Sparse sparse = Sparse.load();
+        for (String filename : curr.getTracked().keySet()) {
+            if (!working.contains(filename) && sparse.includes(filename)
+                && !this.staging.removals().contains(filename)) {
+                result.deleted.add(filename);
+            }
         }
-        System.out.println();
+        result.renames.addAll(renames(curr, tree, working, sparse));
+        tree.save();
 
-        System.out.println("=== Removed Files ===");
-        Object[] remKeys = this.removal.toArray();
-        Arrays.sort(remKeys);
-        for (Object filename : remKeys) {
-            System.out.println(filename);
+        for (String filename : working) {
+            if (!this.staging.additions().containsKey(filename)
+                    && !curr.getTracked().containsKey(filename)) {
+                result.untracked.add(filename);
+            }
         }
-        System.out.println();
+        return result;
+    }
 
-        Commit curr = getHead();
-        System.out.println("=== Modifications Not Staged For Commit ===");
-        for (String filename : Utils.plainFilenamesIn(CWD)) {
-            if (filename.contains(".txt")) {
-                File fileObj = Utils.join(CWD, filename);
-                String currFileContents = Utils.readContentsAsString(fileObj);
-                if (curr.getTracked().containsKey(filename)
-                      &&  !Utils.sha1(currFileContents).equals(
-                        curr.getTracked().get(filename))) {
-                    System.out.println(filename + " (modified)");
-                }
+    /** Returns the files of TREE, which leaves out ignored files, together
+     * with the files tracked by CURR that are present although ignored. */
+    private TreeSet<String> working(Monitor tree, Commit curr) {
+        TreeSet<String> result = new TreeSet<String>(tree.files());
+        for (String filename : curr.getTracked().keySet()) {
+            if (!result.contains(filename)
+                    && Worktree.file(filename).isFile()) {
+                result.add(filename);
             }
         }
+        return result;
+    }
+
+    /** Returns the new files, staged or untracked, that are renames of
+     * files of commit CURR deleted or staged for removal, seen through
+     * TREE with working files WORKING. Files SPARSE leaves out of the
+     * working tree are not deleted. Copies of files still present are
+     * found too if status.findCopies is true. */
+    private ArrayList<Renames.Pair> renames(Commit curr, Monitor tree,
+                                            Set<String> working,
+                                            Sparse sparse) {
+        boolean copies = Config.get(Renames.FIND_COPIES, "false")
+                .equals("true");
+        HashMap<String, String> deleted = new HashMap<String, String>();
+        HashMap<String, String> kept = new HashMap<String, String>();
+        HashMap<String, String> added = new HashMap<String, String>();
+        HashMap<String, String> untracked = new HashMap<String, String>();
         for (String filename : curr.getTracked().keySet()) {
-            if (!Utils.plainFilenamesIn(CWD).contains(filename)
-                && !this.removal.contains(filename)) {
-                System.out.println(filename + " (deleted)");
+            String code = curr.getTracked().get(filename);
+            if (!working.contains(filename) && sparse.includes(filename)
+                    || this.staging.removals().contains(filename)) {
+                deleted.put(filename, code);
+            } else if (copies) {
+                kept.put(filename, code);
             }
         }
-        System.out.println();
-
-        System.out.println("=== Untracked Files ===");
-        for (String filename : Utils.plainFilenamesIn(CWD)) {
-            if (filename.contains(".txt")) {
-                if (!this.addition.containsKey(filename)
-                        && !curr.getTracked().containsKey(filename)) {
-                    System.out.println(filename);
-                }
+        for (String filename : this.staging.additions().keySet()) {
+            if (!curr.getTracked().containsKey(filename)) {
+                added.put(filename, this.staging.additions().get(filename));
+            }
+        }
+        for (String filename : working) {
+            if (!curr.getTracked().containsKey(filename)
+                    && !added.containsKey(filename)) {
+                added.put(filename, tree.hash(filename));
+                untracked.put(tree.hash(filename), filename);
             }
         }
-        System.out.println();
+        if (added.isEmpty() || deleted.isEmpty() && kept.isEmpty()) {
+            return new ArrayList<Renames.Pair>();
+        }
+        long threshold = Blob.largeFileThreshold();
+        return Renames.detect(deleted, kept, added, code -> {
+            if (untracked.containsKey(code)) {
+                File file = Utils.join(CWD, untracked.get(code));
+                return file.length() < threshold
+                        ? Utils.readContentsAsString(file) : null;
+            }
+            Blob blob = getBlob(code);
+            return blob == null || blob.size() >= threshold ? null
+                    : blob.getContents();
+        });
     }
 
     /** Create a new branch with BRANCHNAME that points at HEAD.  */
     public void branch(String branchName) {
-        if (this.branches.containsKey(branchName)) {
-            exitWithError("A branch with that name already exists.");
+        if (this.refs.contains(branchName)) {
+            throw error("A branch with that name already exists.");
         }
-        this.branches.put(branchName, this.head);
-        Utils.writeObject(BRANCHES_FILE, this.branches);
+        this.refs.put(branchName, this.head);
     }
 
     /** Remove the branch with the given BRANCHNAME.
@@ -490,13 +664,11 @@ public class Repo {
      */
     public void rmBranch(String branchName) {
         if (this.activeBranch.equals(branchName)) {
-            exitWithError("Cannot remove the current branch.");
+            throw error("Cannot remove the current branch.");
         }
-        if (!this.branches.containsKey(branchName)) {
-            exitWithError("A branch with that name does not exist.");
+        if (!this.refs.delete(branchName)) {
+            throw error("A branch with that name does not exist.");
         }
-        this.branches.remove(branchName);
-        Utils.writeObject(BRANCHES_FILE, this.branches);
     }
 
     /** Resets the state to the commit of the given COMMITID.
@@ -504,12 +676,14 @@ public class Repo {
      * @param commitId the hashcode of the commit to reset to.
      */
     public void reset(String commitId) {
-        Commit curr = getHead();
-        for (String filename : Utils.plainFilenamesIn(CWD)) {
-            if (filename.contains(".txt")
-                    && (!getActiveBranch().getTracked().containsKey(filename)
-                    && !this.addition.containsKey(filename))) {
-                exitWithError("There is an untracked file in the way; delete "
+        Monitor tree = Monitor.open();
+        Sparse sparse = Sparse.load();
+        Commit active = getActiveBranch();
+        for (String filename : tree.files()) {
+            if (sparse.includes(filename)
+                    && (!active.getTracked().containsKey(filename)
+                    && !this.staging.additions().containsKey(filename))) {
+                throw error("There is an untracked file in the way; delete "
                         + "it, or add and commit it first.");
             }
         }
@@ -518,33 +692,286 @@ public class Repo {
 
         Commit prevCommit = getCommit(commitId);
         if (prevCommit == null) {
-            exitWithError("No commit with that id exists.");
+            throw error("No commit with that id exists.");
         }
 
 
 
-        for (String filename : Utils.plainFilenamesIn(CWD)) {
-            if (filename.contains(".txt")) {
-                Utils.restrictedDelete(filename);
+        for (String filename : working(tree, active)) {
+            if (sparse.includes(filename)) {
+                Worktree.delete(filename);
             }
         }
 
-        for (String filename : prevCommit.getTracked().keySet()) {
-            checkout(commitId, filename);
-        }
+        writeTracked(prevCommit, sparse);
 
 
 
         this.head = commitId;
-        this.branches.put(this.activeBranch, commitId);
+        this.refs.put(this.activeBranch, commitId);
         Utils.writeObject(HEAD_FILE, this.head);
-        Utils.writeObject(BRANCHES_FILE, this.branches);
 
 
-        this.addition.clear();
-        this.removal.clear();
-        Utils.writeObject(ADD_FILE, this.addition);
-        Utils.writeObject(REM_FILE, this.removal);
+        this.staging.clear();
+    }
+
+    /** Fold the branches updated since the last pack into the packed
+     * branches file. Returns the number of branches packed. */
+    public int packRefs() {
+        return this.refs.pack();
+    }
+
+    /** Move objects stored in the old flat layout of the object directories
+     * into their shards. Returns the numbers of commits and of blobs
+     * moved. */
+    public int[] migrateObjects() {
+        int commits = ObjectStore.migrate(COMMIT_DIR);
+        int blobs = ObjectStore.migrate(BLOBS_DIR);
+        return new int[] {commits, blobs};
+    }
+
+    /** Returns how many commits and blobs the branches reach, and how many
+     * stored objects they don't. Reachability comes from the bitmaps, so
+     * only commits made since the last stored bitmap are read. */
+    public int[] countObjects() {
+        Bitmaps bitmaps = new Bitmaps(GITLET_DIR);
+        BitSet reachable = bitmaps.reachable(this.refs.tips());
+        int commits = 0;
+        for (int n = reachable.nextSetBit(0); n >= 0;
+             n = reachable.nextSetBit(n + 1)) {
+            if (bitmaps.tag(n) == Remote.COMMIT) {
+                commits += 1;
+            }
+        }
+        int unreachable = 0;
+        for (String code : ObjectStore.list(COMMIT_DIR)) {
+            if (!bitmaps.contains(reachable, Remote.COMMIT, code)) {
+                unreachable += 1;
+            }
+        }
+        for (String code : ObjectStore.list(BLOBS_DIR)) {
+            if (!bitmaps.contains(reachable, Remote.BLOB, code)) {
+                unreachable += 1;
+            }
+        }
+        return new int[] {commits, reachable.cardinality() - commits,
+            unreachable};
+    }
+
+    /** Re-hash every object and check the links between them. Returns each
+     * missing, corrupt or dangling object found, in sorted order. Progress
+     * is reported to PROGRESS unless it is null. */
+    public List<String> fsck(PrintStream progress) {
+        ArrayList<String> tips = this.refs.tips();
+        tips.add(this.head);
+        return new Fsck(GITLET_DIR, progress).run(tips);
+    }
+
+    /** Import the history streamed on IN and save the branches it created
+     * or moved, reporting progress and a summary to OUT. The HEAD follows
+     * the active branch, but the working tree and the staging area are left
+     * alone. */
+    public void fastImport(InputStream in, PrintStream out) {
+        new FastImport(in, this.refs, out, this::saveImported).run();
+    }
+
+    /** Save the branches changed by an import so far, UPDATES, with the
+     * hashcodes of their new tips or null for those deleted, once every
+     * object they reach is on disk, and move HEAD with the active branch. */
+    private void saveImported(HashMap<String, String> updates) {
+        ObjectWriter.flush();
+        for (String branch : updates.keySet()) {
+            if (updates.get(branch) == null) {
+                this.refs.delete(branch);
+            } else {
+                this.refs.put(branch, updates.get(branch));
+            }
+        }
+        String tip = this.refs.get(this.activeBranch);
+        if (tip != null) {
+            this.head = tip;
+            Utils.writeObject(HEAD_FILE, this.head);
+        }
+    }
+
+    /** Returns the sparse-checkout patterns, or none if every file is
+     * checked out. */
+    public List<String> sparsePatterns() {
+        return Sparse.load().patterns();
+    }
+
+    /** Keep only the files of HEAD matching one of PATTERNS in the working
+     * tree, or every file if there are none: missing ones are written and
+     * unmodified ones outside the patterns removed. Returns the modified
+     * files outside the patterns, which are kept.
+     *
+     * @param patterns the new sparse-checkout patterns. */
+    public List<String> sparseCheckout(String... patterns) {
+        Sparse sparse = Sparse.save(patterns);
+        Commit curr = getHead();
+        Monitor tree = Monitor.open();
+        ArrayList<String> wanted = new ArrayList<String>();
+        ArrayList<String> kept = new ArrayList<String>();
+        for (String filename : curr.getTracked().keySet()) {
+            String code = curr.getTracked().get(filename);
+            boolean present = Worktree.file(filename).isFile();
+            if (sparse.includes(filename) && !present) {
+                wanted.add(filename);
+            } else if (!sparse.includes(filename) && present) {
+                if (tree.hash(filename).equals(code)) {
+                    Worktree.delete(filename);
+                } else {
+                    kept.add(filename);
+                }
+            }
+        }
+        ArrayList<String> codes = new ArrayList<String>();
+        for (String filename : wanted) {
+            codes.add(curr.getTracked().get(filename));
+        }
+        Promisor.prefetch(codes);
+        for (String filename : wanted) {
+            Worktree.write(filename, curr.getBlob(filename));
+        }
+        Collections.sort(kept);
+        return kept;
+    }
+
+    /** Run the maintenance TASKS, or all of them if there are none, for at
+     * most LIMITMILLIS milliseconds, skipping the object tasks while there
+     * are few loose objects if AUTO. Returns what each task did and how
+     * long it took. */
+    public List<Maintenance.Result> maintenance(List<String> tasks,
+                                                boolean auto,
+                                                long limitMillis) {
+        return new Maintenance(this.refs, Collections.singleton(this.head),
+                this.staging.additions().values(), limitMillis)
+                .run(tasks, auto);
+    }
+
+    /** Returns the value of config KEY, or null if it is not set.
+     *
+     * @param key the name of the setting. */
+    public String config(String key) {
+        return Config.get(key, null);
+    }
+
+    /** Set config KEY to VALUE.
+     *
+     * @param key the name of the setting.
+     * @param value the new value. */
+    public void config(String key, String value) {
+        Config.set(key, value);
+    }
+
+    /** Save the path of a remote's .gitlet directory under NAME.
+     *
+     * @param name the name of the remote.
+     * @param path the path of the remote's .gitlet directory. */
+    public void addRemote(String name, String path) {
+        HashMap<String, String> remotes = Remote.remotes();
+        if (remotes.containsKey(name)) {
+            throw error("A remote with that name already exists.");
+        }
+        remotes.put(name, path.replace('/', File.separatorChar));
+        Utils.writeObject(Remote.REMOTES_FILE, remotes);
+    }
+
+    /** Forget the remote NAME.
+     *
+     * @param name the name of the remote. */
+    public void rmRemote(String name) {
+        HashMap<String, String> remotes = Remote.remotes();
+        if (remotes.remove(name) == null) {
+            throw error("A remote with that name does not exist.");
+        }
+        Utils.writeObject(Remote.REMOTES_FILE, remotes);
+    }
+
+    /** Read objects missing locally from the .gitlet directory at PATH.
+     *
+     * @param path the path of the alternate's .gitlet directory. */
+    public void addAlternate(String path) {
+        Alternates.add(path);
+    }
+
+    /** Stop reading objects from the .gitlet directory at PATH, first
+     * copying in what the branches and the staging area reach that only it
+     * holds. Returns the number of objects copied.
+     *
+     * @param path the path of the alternate's .gitlet directory. */
+    public int rmAlternate(String path) {
+        ArrayList<String> tips = this.refs.tips();
+        tips.add(this.head);
+        return Alternates.remove(path, tips,
+                this.staging.additions().values());
+    }
+
+    /** Delete the local objects that an alternate also holds. Returns the
+     * number of objects deleted and the bytes of disk space freed. */
+    public long[] dedup() {
+        return Alternates.dedup();
+    }
+
+    /** Send the commits of the HEAD missing from branch REMOTEBRANCH of
+     * remote REMOTENAME, then point that branch at HEAD, and the remote's
+     * HEAD too if it has that branch checked out. The remote branch must be
+     * in the history of HEAD.
+     *
+     * @param remoteName the name of the remote.
+     * @param remoteBranch the branch of the remote to update. */
+    public void push(String remoteName, String remoteBranch) {
+        File remoteDir = Remote.remoteDir(remoteName);
+        RefStore remoteRefs = new RefStore(remoteDir);
+        String remoteHead = remoteRefs.get(remoteBranch);
+        if (remoteHead != null
+                && (!ObjectStore.contains(COMMIT_DIR, remoteHead)
+                    || !Remote.isAncestor(GITLET_DIR, remoteHead, this.head))) {
+            throw error("Please pull down remote changes before pushing.");
+        }
+        new Remote(GITLET_DIR, remoteDir).send(this.head);
+        remoteRefs.put(remoteBranch, this.head);
+        if (remoteBranch.equals(Utils.readObject(Utils.join(remoteDir,
+                ACTIVE_FILE.getName()), String.class))) {
+            Utils.writeObject(Utils.join(remoteDir, HEAD_FILE.getName()),
+                    this.head);
+        }
+    }
+
+    /** Copy the commits of branch REMOTEBRANCH of remote REMOTENAME that are
+     * missing here, and point the local branch REMOTENAME/REMOTEBRANCH at
+     * it.
+     *
+     * @param remoteName the name of the remote.
+     * @param remoteBranch the branch of the remote to fetch. */
+    public void fetch(String remoteName, String remoteBranch) {
+        File remoteDir = Remote.remoteDir(remoteName);
+        String remoteHead = new RefStore(remoteDir).get(remoteBranch);
+        if (remoteHead == null) {
+            throw error("That remote does not have that branch.");
+        }
+        new Remote(remoteDir, GITLET_DIR).send(remoteHead);
+        this.refs.put(remoteName + "/" + remoteBranch, remoteHead);
+    }
+
+    /** Fetch branch REMOTEBRANCH of remote REMOTENAME, then fast-forward
+     * the current branch to it. Histories that have diverged are refused
+     * until merge is implemented.
+     *
+     * @param remoteName the name of the remote.
+     * @param remoteBranch the branch of the remote to pull. */
+    public void pull(String remoteName, String remoteBranch) {
+        fetch(remoteName, remoteBranch);
+        String fetched = remoteName + "/" + remoteBranch;
+        String fetchedHead = this.refs.get(fetched);
+        if (Remote.isAncestor(GITLET_DIR, fetchedHead, this.head)) {
+            return;
+        }
+        if (Remote.isAncestor(GITLET_DIR, this.head, fetchedHead)) {
+            reset(fetchedHead);
+            return;
+        }
+        throw error("Histories have diverged; merge is not supported.");
     }
 
     /** Check for errors to catch in merge.
@@ -552,20 +979,20 @@ public class Repo {
      * @param otherBranchName the name of the branch to merge with. */
     public void checkMerge(String otherBranchName) {
         if (this.activeBranch.equals(otherBranchName)) {
-            exitWithError("Cannot merge a branch with itself.");
+            throw error("Cannot merge a branch with itself.");
         }
-        if (!this.branches.containsKey(otherBranchName)) {
-            exitWithError("A branch with that name does not exist.");
+        if (!this.refs.contains(otherBranchName)) {
+            throw error("A branch with that name does not exist.");
         }
-        Commit curr = getHead();
-        for (String filename : Utils.plainFilenamesIn(CWD)) {
-            if (filename.contains(".txt")
-                    && (!getActiveBranch().getTracked().containsKey(
-                    filename))) {
-                if (this.addition.containsKey(filename)) {
-                    exitWithError("You have uncommitted changes.");
+        Commit active = getActiveBranch();
+        Sparse sparse = Sparse.load();
+        for (String filename : Monitor.open().files()) {
+            if (sparse.includes(filename)
+                    && !active.getTracked().containsKey(filename)) {
+                if (this.staging.additions().containsKey(filename)) {
+                    throw error("You have uncommitted changes.");
                 } else {
-                    exitWithError("There is an untracked file in the way; "
+                    throw error("There is an untracked file in the way; "
                             + "delete it, or add and commit it first.");
                 }
             }
@@ -582,48 +1009,304 @@ public class Repo {
 
     }
 
-    /** Print out the commit history from the head. */
-    public void log() {
-        Commit curr = getHead();
-        while (curr != null) {
-            System.out.println("===");
-            System.out.println("commit " + curr.code());
-            System.out.println("Date: " + curr.getTimestampRepr());
-            System.out.println(curr.getMessage());
-            System.out.println();
-            curr = curr.getParent();
+    /** Apply the changes of each of the commits COMMITIDS in turn on top of
+     * HEAD as new commits, computed in memory, then bring the working tree
+     * up to date once.
+     *
+     * @param commitIds the hashcodes of the commits, possibly abbreviated. */
+    public void cherryPick(String... commitIds) {
+        checkReplay();
+        Replay replay = new Replay(getHead(), this.head);
+        for (String commitId : commitIds) {
+            String code = findHash(commitId);
+            Commit pick = getCommit(code);
+            if (pick == null) {
+                throw error("No commit with that id exists.");
+            }
+            replay.apply(pick, code);
         }
+        if (replay.applied() == 0) {
+            throw error("No changes added to the commit.");
+        }
+        moveHead(replay);
     }
 
-    /**
-     * For each branch, display all commits in reverse order.
-     * */
-    public void display() {
-        for (String branchName: this.branches.keySet()) {
-            Commit curr = getCommit(this.branches.get(branchName));
-            while (curr != null) {
-                System.out.println("===");
-                System.out.println("commit " + curr.code());
-                System.out.println(curr.getMessage());
-                System.out.print("tracking: ");
-                for (String filename : curr.getTracked().keySet()) {
-                    System.out.println(filename + ", ");
+    /** Replay the commits of the current branch since it split from
+     * branch UPSTREAM on top of UPSTREAM, computed in memory, point the
+     * current branch at the last of them and bring the working tree up to
+     * date once. Returns the number of commits replayed.
+     *
+     * @param upstream the name of the branch to rebase onto. */
+    public int rebase(String upstream) {
+        if (this.activeBranch.equals(upstream)) {
+            throw error("Cannot rebase a branch onto itself.");
+        }
+        String onto = this.refs.get(upstream);
+        if (onto == null) {
+            throw error("A branch with that name does not exist.");
+        }
+        checkReplay();
+        String split = splitPoint(this.head, onto);
+        if (onto.equals(split)) {
+            throw error("Given branch is an ancestor of the current branch.");
+        }
+        ArrayList<String> picks = new ArrayList<String>();
+        for (String code = this.head; !code.equals(split);
+             code = getCommit(code).getParentCode()) {
+            picks.add(code);
+        }
+        Collections.reverse(picks);
+        Replay replay = new Replay(getCommit(onto), onto);
+        for (String code : picks) {
+            replay.apply(getCommit(code), code);
+        }
+        moveHead(replay);
+        return replay.applied();
+    }
+
+    /** Check that nothing is staged before commits are replayed. */
+    private void checkReplay() {
+        if (!this.staging.isEmpty()) {
+            throw error("You have uncommitted changes.");
+        }
+    }
+
+    /** Returns the latest common ancestor of commits A and B, walking
+     * both histories a step at a time so that only the commits since the
+     * split are read. */
+    private String splitPoint(String a, String b) {
+        HashSet<String> seenA = new HashSet<String>();
+        HashSet<String> seenB = new HashSet<String>();
+        while (a != null || b != null) {
+            if (a != null) {
+                if (seenB.contains(a)) {
+                    return a;
+                }
+                seenA.add(a);
+                a = getCommit(a).getParentCode();
+            }
+            if (b != null) {
+                if (seenA.contains(b)) {
+                    return b;
                 }
-                System.out.println();
-                curr = curr.getParent();
+                seenB.add(b);
+                b = getCommit(b).getParentCode();
             }
         }
+        throw error("The branches share no history.");
     }
 
-    /**
+    /** Point the current branch at the tip of REPLAY, and write to the
+     * working tree just the files that differ between HEAD and that tip.
      *
-     * @param message the error message to exit with.
-     */
-    public static void exitWithError(String message) {
-        if (message != null && !message.equals("")) {
-            System.out.println(message);
+     * @param replay the commits replayed on top of HEAD or another tip. */
+    private void moveHead(Replay replay) {
+        Monitor tree = Monitor.open();
+        Sparse sparse = Sparse.load();
+        Commit prev = getHead();
+        Commit next = replay.tip();
+        ArrayList<String> changed = new ArrayList<String>();
+        ArrayList<String> codes = new ArrayList<String>();
+        Set<String> files = tree.files();
+        for (String filename
+                 : Replay.changes(prev.getTracked(), next.getTracked())) {
+            if (!sparse.includes(filename)) {
+                continue;
+            }
+            if (files.contains(filename)
+                    && !prev.getTracked().containsKey(filename)) {
+                throw error("There is an untracked file in the way; delete "
+                        + "it, or add and commit it first.");
+            }
+            changed.add(filename);
+            if (next.getTracked().containsKey(filename)) {
+                codes.add(next.getTracked().get(filename));
+            }
+        }
+        ObjectWriter.flush();
+        Promisor.prefetch(codes);
+        for (String filename : changed) {
+            if (next.getTracked().containsKey(filename)) {
+                Worktree.write(filename, next.getBlob(filename));
+            } else {
+                Worktree.delete(filename);
+            }
+        }
+        this.head = replay.tipCode();
+        this.refs.put(this.activeBranch, this.head);
+        Utils.writeObject(HEAD_FILE, this.head);
+    }
+
+    /** Returns the files that differ, in order of filename. With no ARGS,
+     * compares the staging area to the working tree; with --staged, HEAD to
+     * the staging area; with one commit, that commit to the working tree;
+     * with two, the first commit to the second. Contents are only read when
+     * an entry's lines are asked for.
+     *
+     * @param args the operands of the diff command. */
+    public List<Diff.Entry> diff(String... args) {
+        HashMap<String, String> before;
+        HashMap<String, String> after;
+        boolean afterIsWorking = true;
+        if (args.length == 0) {
+            before = stagedFiles();
+            after = workingFiles(before.keySet());
+        } else if (args.length == 1 && args[0].equals("--staged")) {
+            before = getHead().getTracked();
+            after = stagedFiles();
+            afterIsWorking = false;
+        } else if (args.length == 1) {
+            before = diffCommit(args[0]).getTracked();
+            HashSet<String> names = new HashSet<String>(before.keySet());
+            names.addAll(stagedFiles().keySet());
+            after = workingFiles(names);
+        } else if (args.length == 2) {
+            before = diffCommit(args[0]).getTracked();
+            after = diffCommit(args[1]).getTracked();
+            afterIsWorking = false;
+        } else {
+            throw error("Incorrect operands.");
+        }
+
+        TreeSet<String> names = new TreeSet<String>(before.keySet());
+        names.addAll(after.keySet());
+        ArrayList<Diff.Entry> result = new ArrayList<Diff.Entry>();
+        for (String filename : names) {
+            String oldCode = before.get(filename);
+            String newCode = after.get(filename);
+            if (oldCode == null || !oldCode.equals(newCode)) {
+                result.add(new Diff.Entry(filename, oldCode, newCode,
+                        afterIsWorking ? Utils.join(CWD, filename) : null));
+            }
+        }
+        return result;
+    }
+
+    /** Write a tar or, if ZIP, zip archive of the files of commit COMMITID
+     * to OUT, read straight from the object store without touching the
+     * working tree. COMMITID may be abbreviated, or a branch name.
+     *
+     * @param commitId the commit or branch archived.
+     * @param zip true for a zip archive, false for tar.
+     * @param out where the archive is written; left open. */
+    public void archive(String commitId, boolean zip, OutputStream out)
+        throws IOException {
+        if (this.refs.contains(commitId)) {
+            commitId = this.refs.get(commitId);
+        }
+        new Archive(diffCommit(commitId), zip).write(out);
+    }
+
+    /** Returns the commit named by the possibly abbreviated COMMITID, exiting
+     * with an error if there is none. */
+    private Commit diffCommit(String commitId) {
+        Commit result = getCommit(findHash(commitId));
+        if (result == null) {
+            throw error("No commit with that id exists.");
+        }
+        return result;
+    }
+
+    /** Returns the files of the HEAD commit as updated by the staging area.
+     * Keys: filenames
+     * Values: hashcode of the staged or committed blob. */
+    @SuppressWarnings("unchecked")
+    private HashMap<String, String> stagedFiles() {
+        HashMap<String, String> result =
+                (HashMap<String, String>) getHead().getTracked().clone();
+        result.putAll(this.staging.additions());
+        for (String filename : this.staging.removals()) {
+            result.remove(filename);
+        }
+        return result;
+    }
+
+    /** Returns the hashcodes of the working tree versions of FILENAMES,
+     * leaving out the ones that no longer exist. */
+    private HashMap<String, String> workingFiles(Set<String> filenames) {
+        HashMap<String, String> result = new HashMap<String, String>();
+        for (String filename : filenames) {
+            File file = Utils.join(CWD, filename);
+            if (file.isFile()) {
+                result.put(filename, Blob.hashFile(file));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the commit history from the head, read as iterated. */
+    public Iterable<Commit> log() {
+        return history(null);
+    }
+
+    /** Returns the commits in the history of the head that changed
+     * FILENAME, read as iterated. A commit whose changed-path filter rules
+     * FILENAME out is skipped without comparing its tracked files to its
+     * parent's.
+     *
+     * @param filename the path whose history is returned. */
+    public Iterable<Commit> log(String filename) {
+        return history(filename);
+    }
+
+    /** Returns the commits from the head that changed FILENAME, or all of
+     * them if FILENAME is null. */
+    private Iterable<Commit> history(String filename) {
+        Commit start = getHead();
+        return () -> new Iterator<Commit>() {
+            private Commit next = advance(start);
+
+            @Override
+            public boolean hasNext() {
+                return this.next != null;
+            }
+
+            @Override
+            public Commit next() {
+                if (this.next == null) {
+                    throw new NoSuchElementException();
+                }
+                Commit result = this.next;
+                this.next = advance(result.getParent());
+                return result;
+            }
+
+            /** Returns the first commit from CURR on that is reported. */
+            private Commit advance(Commit curr) {
+                while (curr != null && filename != null) {
+                    Commit parent = curr.getParent();
+                    if (curr.mightHaveChanged(filename)) {
+                        String mine = curr.getTracked().get(filename);
+                        String theirs = parent == null ? null
+                                : parent.getTracked().get(filename);
+                        if (mine == null ? theirs != null
+                                : !mine.equals(theirs)) {
+                            return curr;
+                        }
+                    }
+                    curr = parent;
+                }
+                return curr;
+            }
+        };
+    }
+
+    /** Returns the lines of FILENAME as of HEAD, each with the commit that
+     * last changed it.
+     *
+     * @param filename the file to blame. */
+    public List<Blame.Line> blame(String filename) {
+        Commit curr = getHead();
+        if (!curr.getTracked().containsKey(filename)) {
+            throw error("File does not exist in that commit.");
+        }
+        String[] owners = Blame.owners(curr, filename);
+        String[] lines = Blame.lines(curr.getTracked().get(filename));
+        ArrayList<Blame.Line> result = new ArrayList<Blame.Line>();
+        for (int i = 0; i < lines.length; i += 1) {
+            result.add(new Blame.Line(owners[i], i + 1, lines[i]));
         }
-        System.exit(0);
+        return result;
     }
 
 }
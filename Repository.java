@@ -0,0 +1,388 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/** The in-process interface to the repository in the working directory,
+ * for programs that embed Gitlet rather than run it once per command.
+ * Errors are thrown as GitletException instead of ending the process, and
+ * results come back as values: commits, status snapshots, diff entries
+ * and blame lines. Nothing is printed.
+ *
+ * Instances may be shared between threads. Each call reloads the branches,
+ * HEAD and staging area, so it sees the effects of every call that
+ * returned before it. Calls that only read the repository run
+ * concurrently; calls that change it, or the caches kept in it, run one
+ * at a time. Histories and matches are read in full before the call
+ * returns, so no object is read once its lock is released.
+ *
+ * @author Nitin Nazeer
+ */
+public class Repository {
+
+    /** Orders calls from every instance, since they share one .gitlet
+     * directory. */
+    private static final ReentrantReadWriteLock LOCK =
+            new ReentrantReadWriteLock();
+
+    /** Use open, init or clone. */
+    private Repository() {
+    }
+
+    /** Returns the repository in the working directory. */
+    public static Repository open() {
+        if (!Repo.GITLET_DIR.isDirectory()) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
+        }
+        return new Repository();
+    }
+
+    /** Create a repository in the working directory whose objects are
+     * named by the hash engine OBJECTFORMAT, e.g. sha1, and return it. */
+    public static Repository init(String objectFormat) {
+        change(repo -> repo.init(objectFormat));
+        return new Repository();
+    }
+
+    /** Make the working directory a copy of the repository whose .gitlet
+     * directory is at PATH, fetching blobs only when first needed if
+     * BLOBLESS, and return it. */
+    public static Repository clone(String path, boolean blobless) {
+        change(repo -> repo.clone(path, blobless));
+        return new Repository();
+    }
+
+    /** Stage FILENAMES for addition. */
+    public void add(String... filenames) {
+        change(repo -> repo.add(filenames));
+    }
+
+    /** Stage FILENAME for removal, deleting it from the working tree, or
+     * unstage it if it is only staged for addition. */
+    public void rm(String filename) {
+        change(repo -> repo.rm(filename));
+    }
+
+    /** Commit the staging area with MESSAGE and return the hashcode of the
+     * new commit. */
+    public String commit(String message) {
+        return update(repo -> {
+            repo.commit(message);
+            return repo.getActiveBranchHash();
+        });
+    }
+
+    /** Restore FILENAME from HEAD. */
+    public void checkout(String filename) {
+        change(repo -> repo.checkout(filename));
+    }
+
+    /** Restore FILENAME from commit COMMITID, which may be abbreviated. */
+    public void checkout(String commitId, String filename) {
+        change(repo -> repo.checkout(commitId, filename));
+    }
+
+    /** Check out branch BRANCHNAME. */
+    public void checkoutBranch(String branchName) {
+        change(repo -> repo.checkoutBranch(branchName));
+    }
+
+    /** Create branch BRANCHNAME at HEAD. */
+    public void branch(String branchName) {
+        change(repo -> repo.branch(branchName));
+    }
+
+    /** Delete branch BRANCHNAME. */
+    public void rmBranch(String branchName) {
+        change(repo -> repo.rmBranch(branchName));
+    }
+
+    /** Check out commit COMMITID, which may be abbreviated, and move the
+     * active branch to it. */
+    public void reset(String commitId) {
+        change(repo -> repo.reset(commitId));
+    }
+
+    /** Merge branch BRANCHNAME into the active branch. */
+    public void merge(String branchName) {
+        change(repo -> repo.merge(branchName));
+    }
+
+    /** Apply the changes of the commits COMMITIDS in turn on top of
+     * HEAD. */
+    public void cherryPick(String... commitIds) {
+        change(repo -> repo.cherryPick(commitIds));
+    }
+
+    /** Replay the current branch on top of branch UPSTREAM. Returns the
+     * number of commits replayed. */
+    public int rebase(String upstream) {
+        return update(repo -> repo.rebase(upstream));
+    }
+
+    /** Returns the branches, sorted by name, with the hashcodes of their
+     * tips. */
+    public Map<String, String> branches() {
+        return branches("");
+    }
+
+    /** Returns the branches whose names start with PREFIX, sorted by name,
+     * with the hashcodes of their tips. */
+    public Map<String, String> branches(String prefix) {
+        return read(repo -> {
+            TreeMap<String, String> result = new TreeMap<String, String>();
+            for (Map.Entry<String, String> branch
+                     : repo.getBranches(prefix)) {
+                result.put(branch.getKey(), branch.getValue());
+            }
+            return Collections.unmodifiableMap(result);
+        });
+    }
+
+    /** Returns the name of the active branch. */
+    public String activeBranch() {
+        return read(Repo::getActiveBranchName);
+    }
+
+    /** Returns the commit COMMITID, which may be abbreviated, or null if
+     * there is none. */
+    public Commit commitAt(String commitId) {
+        return read(repo -> repo.getCommit(repo.findHash(commitId)));
+    }
+
+    /** Returns the history of HEAD, newest first. */
+    public Iterable<Commit> log() {
+        return read(repo -> collect(repo.log()));
+    }
+
+    /** Returns the commits in the history of HEAD that changed FILENAME,
+     * newest first. */
+    public Iterable<Commit> log(String filename) {
+        return read(repo -> collect(repo.log(filename)));
+    }
+
+    /** Returns every commit, in order of hashcode. */
+    public Iterable<Commit> globalLog() {
+        return read(repo -> collect(repo.globalLog()));
+    }
+
+    /** Returns the lines matching PATTERN in the files of the commits
+     * COMMITIDS, or of every commit in the history of HEAD if there are
+     * none. */
+    public Iterable<Grep.Match> grep(String pattern, String... commitIds) {
+        return read(repo -> collect(repo.grep(pattern, commitIds)));
+    }
+
+    /** Returns the hashcodes of the commits with MESSAGE. */
+    public List<String> find(String message) {
+        return read(repo -> repo.find(message));
+    }
+
+    /** Returns a snapshot of the branches, staging area and working
+     * tree. */
+    public Status status() {
+        return update(Repo::status);
+    }
+
+    /** Returns the files that differ between the sides named by ARGS, as
+     * for the diff command. */
+    public List<Diff.Entry> diff(String... args) {
+        return read(repo -> repo.diff(args));
+    }
+
+    /** Returns the lines of FILENAME as of HEAD with the commits that last
+     * changed them. */
+    public List<Blame.Line> blame(String filename) {
+        return update(repo -> repo.blame(filename));
+    }
+
+    /** Write the files of commit or branch COMMITID to OUT as a zip
+     * archive if ZIP, and as a tar archive otherwise. */
+    public void archive(String commitId, boolean zip, OutputStream out)
+        throws IOException {
+        try {
+            read(repo -> {
+                try {
+                    repo.archive(commitId, zip, out);
+                } catch (IOException excp) {
+                    throw new UncheckedIOException(excp);
+                }
+                return null;
+            });
+        } catch (UncheckedIOException excp) {
+            throw excp.getCause();
+        }
+    }
+
+    /** Returns the value of config KEY, or null if it is not set. */
+    public String config(String key) {
+        return read(repo -> repo.config(key));
+    }
+
+    /** Set config KEY to VALUE. */
+    public void config(String key, String value) {
+        change(repo -> repo.config(key, value));
+    }
+
+    /** Returns the sparse-checkout patterns, or none if every file is
+     * checked out. */
+    public List<String> sparsePatterns() {
+        return read(Repo::sparsePatterns);
+    }
+
+    /** Check out only the files of HEAD matching PATTERNS, or every file if
+     * there are none. Returns the modified files kept outside them. */
+    public List<String> sparseCheckout(String... patterns) {
+        return update(repo -> repo.sparseCheckout(patterns));
+    }
+
+    /** Save the .gitlet directory at PATH as remote NAME. */
+    public void addRemote(String name, String path) {
+        change(repo -> repo.addRemote(name, path));
+    }
+
+    /** Forget remote NAME. */
+    public void rmRemote(String name) {
+        change(repo -> repo.rmRemote(name));
+    }
+
+    /** Read objects missing locally from the .gitlet directory at
+     * PATH. */
+    public void addAlternate(String path) {
+        change(repo -> repo.addAlternate(path));
+    }
+
+    /** Stop reading objects from the .gitlet directory at PATH, copying
+     * in those only it holds. Returns the number of objects copied. */
+    public int rmAlternate(String path) {
+        return update(repo -> repo.rmAlternate(path));
+    }
+
+    /** Delete the local objects that an alternate also holds. Returns the
+     * number of objects deleted and the bytes of disk space freed. */
+    public long[] dedup() {
+        return update(Repo::dedup);
+    }
+
+    /** Send HEAD to branch BRANCHNAME of remote REMOTENAME. */
+    public void push(String remoteName, String branchName) {
+        change(repo -> repo.push(remoteName, branchName));
+    }
+
+    /** Copy branch BRANCHNAME of remote REMOTENAME to the local branch
+     * REMOTENAME/BRANCHNAME. */
+    public void fetch(String remoteName, String branchName) {
+        change(repo -> repo.fetch(remoteName, branchName));
+    }
+
+    /** Fetch branch BRANCHNAME of remote REMOTENAME and bring the active
+     * branch up to date with it. */
+    public void pull(String remoteName, String branchName) {
+        change(repo -> repo.pull(remoteName, branchName));
+    }
+
+    /** Import the fast-import stream IN, printing its progress messages and
+     * a summary to OUT. */
+    public void fastImport(InputStream in, PrintStream out) {
+        change(repo -> repo.fastImport(in, out));
+    }
+
+    /** Returns the numbers of commits and of blobs reachable from the
+     * branches, and of stored objects that are not. */
+    public int[] countObjects() {
+        return update(Repo::countObjects);
+    }
+
+    /** Returns the missing, corrupt and dangling objects, reporting
+     * progress to PROGRESS unless it is null. */
+    public List<String> fsck(PrintStream progress) {
+        return read(repo -> repo.fsck(progress));
+    }
+
+    /** Move objects in the old flat layout into shards. Returns the numbers
+     * of commits and of blobs moved. */
+    public int[] migrateObjects() {
+        return update(Repo::migrateObjects);
+    }
+
+    /** Fold the branches updated since the last pack into the packed
+     * branches file. Returns the number of branches packed. */
+    public int packRefs() {
+        return update(Repo::packRefs);
+    }
+
+    /** Run the maintenance TASKS, or all of them if there are none, for at
+     * most LIMITMILLIS milliseconds, skipping the object tasks while there
+     * are few loose objects if AUTO. Returns what each task did and how
+     * long it took. Calls that only read the repository go on meanwhile:
+     * objects are removed only once packed, and branches are published by
+     * rename. */
+    public List<Maintenance.Result> maintenance(List<String> tasks,
+                                                boolean auto,
+                                                long limitMillis) {
+        return read(repo -> repo.maintenance(tasks, auto, limitMillis));
+    }
+
+    /** Run the fsmonitor daemon on this thread until it is interrupted,
+     * running READY once the working tree is watched. It holds neither
+     * lock, since it runs for as long as it is wanted and touches only the
+     * working tree and its own files, which it locks itself. */
+    public void fsmonitor(Runnable ready) {
+        Monitor.run(ready);
+    }
+
+    /** Returns the elements of ITEMS, read now, as a list that cannot be
+     * modified. */
+    private static <T> List<T> collect(Iterable<T> items) {
+        ArrayList<T> result = new ArrayList<T>();
+        for (T item : items) {
+            result.add(item);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /** Returns the result of OP on a freshly loaded repository, holding the
+     * shared lock. */
+    private static <T> T read(Function<Repo, T> op) {
+        Lock lock = LOCK.readLock();
+        lock.lock();
+        try {
+            return op.apply(new Repo());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the result of OP on a freshly loaded repository, holding the
+     * exclusive lock. */
+    private static <T> T update(Function<Repo, T> op) {
+        Lock lock = LOCK.writeLock();
+        lock.lock();
+        try {
+            return op.apply(new Repo());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Apply OP to a freshly loaded repository holding the exclusive
+     * lock. */
+    private static void change(Consumer<Repo> op) {
+        update(repo -> {
+            op.accept(repo);
+            return null;
+        });
+    }
+}
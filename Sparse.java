@@ -0,0 +1,89 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Sparse-checkout patterns, kept one per line in the .gitlet directory.
+ * While any are set, only the tracked files matching one of them are
+ * written to the working tree; the others stay in every commit but are
+ * neither written, deleted nor reported as missing. Patterns are globs as
+ * understood by PathMatcher, and a pattern ending in a slash matches
+ * everything under that directory. Patterns are compiled once per load.
+ *
+ * @author Nitin Nazeer
+ */
+public class Sparse {
+
+    /** The file object repr of the patterns file. */
+    static final File SPARSE_FILE = Utils.join(Repo.GITLET_DIR,
+            "sparse-checkout");
+
+    /** The patterns, in the order they were set. */
+    private final List<String> patterns;
+
+    /** The compiled patterns. */
+    private final ArrayList<PathMatcher> matchers =
+            new ArrayList<PathMatcher>();
+
+    /** A filter of PATTERNS. */
+    private Sparse(List<String> patterns) {
+        this.patterns = patterns;
+        for (String pattern : patterns) {
+            if (pattern.endsWith("/")) {
+                pattern += "**";
+            }
+            this.matchers.add(
+                    FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+        }
+    }
+
+    /** Returns the patterns of the repository in the working directory. */
+    static Sparse load() {
+        if (!SPARSE_FILE.isFile()) {
+            return new Sparse(new ArrayList<String>());
+        }
+        ArrayList<String> patterns = new ArrayList<String>();
+        for (String line : Utils.readContentsAsString(SPARSE_FILE)
+                .split("\n")) {
+            if (!line.isBlank()) {
+                patterns.add(line.trim());
+            }
+        }
+        return new Sparse(patterns);
+    }
+
+    /** Replace the patterns with PATTERNS, or turn sparse checkout off if
+     * there are none. Returns the new filter. */
+    static Sparse save(String... patterns) {
+        if (patterns.length == 0) {
+            SPARSE_FILE.delete();
+        } else {
+            Utils.writeContents(SPARSE_FILE,
+                    String.join("\n", patterns) + "\n");
+        }
+        return new Sparse(Arrays.asList(patterns));
+    }
+
+    /** Returns the patterns. */
+    List<String> patterns() {
+        return this.patterns;
+    }
+
+    /** Returns true if FILENAME belongs in the working tree. */
+    boolean includes(String filename) {
+        if (this.matchers.isEmpty()) {
+            return true;
+        }
+        for (PathMatcher matcher : this.matchers) {
+            if (matcher.matches(Paths.get(filename))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
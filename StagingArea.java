@@ -0,0 +1,227 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/** The staging area, kept as an append-only log of operations.
+ *
+ * Staging or unstaging a file appends one line to the log instead of
+ * rewriting the whole staging area, and clearing it truncates the log.
+ * Loading replays the log into a hash map and a hash set. Once the log holds
+ * more than COMPACT_RATIO lines per staged file, and at least COMPACT_MIN
+ * lines, it is rewritten with one line per staged file. The log is thus a
+ * compacted snapshot followed by the operations since, and every command
+ * that loads it still reads the whole of it: up to COMPACT_RATIO lines per
+ * staged file, or COMPACT_MIN lines, however many operations came before.
+ *
+ * Each line is an operation character, then a space-free hashcode or "-",
+ * a space and the filename: '+' stages the file for addition as the blob,
+ * '-' stages it for removal, and '=' unstages it. Filenames containing a
+ * newline cannot be staged. A last line without its newline was cut short
+ * by a crash: it is ignored when loading, and cut off before the next
+ * append.
+ *
+ * @author Nitin Nazeer
+ */
+public class StagingArea {
+
+    /** The file object repr of the staging log. */
+    static final File LOG_FILE = Utils.join(Repo.GITLET_DIR, "staging");
+
+    /** The log is compacted once it has more than this many lines per
+     * staged file. */
+    static final int COMPACT_RATIO = 4;
+
+    /** Logs shorter than this are never compacted. */
+    static final int COMPACT_MIN = 1024;
+
+    /** Files staged for addition.
+     * Keys: filenames
+     * Values: hashcode of the file's staged blob. */
+    private final HashMap<String, String> additions =
+            new HashMap<String, String>();
+
+    /** Files staged for removal. */
+    private final HashSet<String> removals = new HashSet<String>();
+
+    /** The number of lines in the log. */
+    private int lines;
+
+    /** Returns the staging area of the repository in the working
+     * directory. A staging area saved by older versions as whole add and
+     * remove files is converted to a log. */
+    @SuppressWarnings("unchecked")
+    static StagingArea load() {
+        StagingArea result = new StagingArea();
+        if (LOG_FILE.isFile()) {
+            byte[] bytes = Utils.readContents(LOG_FILE);
+            String log = new String(bytes, 0, complete(bytes),
+                    StandardCharsets.UTF_8);
+            for (String line : log.split("\n")) {
+                if (!line.isEmpty()) {
+                    result.apply(line);
+                    result.lines += 1;
+                }
+            }
+        } else if (Repo.ADD_FILE.isFile()) {
+            result.additions.putAll(
+                    Utils.readObject(Repo.ADD_FILE, HashMap.class));
+            result.removals.addAll(
+                    Utils.readObject(Repo.REM_FILE, ArrayList.class));
+            result.compact();
+            Repo.ADD_FILE.delete();
+            Repo.REM_FILE.delete();
+        }
+        return result;
+    }
+
+    /** Returns the files staged for addition, keyed by filename with the
+     * hashcodes of their blobs. Must not be modified. */
+    HashMap<String, String> additions() {
+        return this.additions;
+    }
+
+    /** Returns the files staged for removal. Must not be modified. */
+    Set<String> removals() {
+        return this.removals;
+    }
+
+    /** Returns true if nothing is staged. */
+    boolean isEmpty() {
+        return this.additions.isEmpty() && this.removals.isEmpty();
+    }
+
+    /** Stage FILENAME for addition as the blob CODE. */
+    void add(String filename, String code) {
+        append('+', code, filename);
+    }
+
+    /** Stage FILENAME for removal. */
+    void remove(String filename) {
+        append('-', "-", filename);
+    }
+
+    /** Unstage FILENAME, if it is staged. */
+    void unstage(String filename) {
+        if (this.additions.containsKey(filename)
+                || this.removals.contains(filename)) {
+            append('=', "-", filename);
+        }
+    }
+
+    /** Unstage every file. */
+    void clear() {
+        this.additions.clear();
+        this.removals.clear();
+        this.lines = 0;
+        Utils.writeContents(LOG_FILE, "");
+    }
+
+    /** Apply the operation OP on FILENAME with blob CODE, and append it to
+     * the log. */
+    private void append(char op, String code, String filename) {
+        if (filename.indexOf('\n') >= 0) {
+            throw Utils.error("Cannot stage a filename containing a newline:"
+                    + " %s", filename.replace("\n", "\\n"));
+        }
+        String line = op + code + " " + filename;
+        apply(line);
+        this.lines += 1;
+        if (this.lines >= COMPACT_MIN && this.lines
+                > COMPACT_RATIO * (this.additions.size()
+                                   + this.removals.size())) {
+            compact();
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(LOG_FILE.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long end = channel.size();
+            ByteBuffer last = ByteBuffer.allocate(1);
+            if (end > 0 && (channel.read(last, end - 1) < 1
+                            || last.get(0) != '\n')) {
+                ByteBuffer log = ByteBuffer.allocate((int) end);
+                while (log.hasRemaining()
+                        && channel.read(log, log.position()) >= 0) {
+                    continue;
+                }
+                end = complete(log.array());
+                channel.truncate(end);
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(
+                    (line + "\n").getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                end += channel.write(bytes, end);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Could not update the staging area: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /** Returns the length of the complete lines at the start of LOG. */
+    private static int complete(byte[] log) {
+        int result = log.length;
+        while (result > 0 && log[result - 1] != '\n') {
+            result -= 1;
+        }
+        return result;
+    }
+
+    /** Apply the operation of the log line LINE. */
+    private void apply(String line) {
+        int space = line.indexOf(' ');
+        String code = line.substring(1, space);
+        String filename = line.substring(space + 1);
+        switch (line.charAt(0)) {
+        case '+':
+            this.additions.put(filename, code);
+            this.removals.remove(filename);
+            break;
+        case '-':
+            this.additions.remove(filename);
+            this.removals.add(filename);
+            break;
+        case '=':
+            this.additions.remove(filename);
+            this.removals.remove(filename);
+            break;
+        default:
+            throw Utils.error("Corrupt staging log line: %s", line);
+        }
+    }
+
+    /** Rewrite the log with one line per staged file. The new log replaces
+     * the old one by a rename, so a reader sees one or the other. */
+    private void compact() {
+        StringBuilder log = new StringBuilder();
+        for (String filename : this.additions.keySet()) {
+            log.append('+').append(this.additions.get(filename)).append(' ')
+                    .append(filename).append('\n');
+        }
+        for (String filename : this.removals) {
+            log.append("-- ").append(filename).append('\n');
+        }
+        File temp = new File(LOG_FILE.getPath() + ".tmp");
+        Utils.writeContents(temp, log.toString());
+        try {
+            Files.move(temp.toPath(), LOG_FILE.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Could not compact the staging area: %s",
+                    excp.getMessage());
+        }
+        this.lines = this.additions.size() + this.removals.size();
+    }
+}
@@ -0,0 +1,86 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/** A snapshot of the state of a repository, as reported by status. Every
+ * list of filenames is in sorted order.
+ *
+ * @author Nitin Nazeer
+ */
+public class Status {
+
+    /** The branch names, sorted, read from the ref store as iterated. */
+    private final Iterable<String> branches;
+
+    /** The name of the active branch. */
+    private final String activeBranch;
+
+    /** Files staged for addition. */
+    final TreeSet<String> staged = new TreeSet<String>();
+
+    /** Files staged for removal. */
+    final TreeSet<String> removed = new TreeSet<String>();
+
+    /** Tracked files changed in the working tree but not staged. */
+    final TreeSet<String> modified = new TreeSet<String>();
+
+    /** Tracked files missing from the working tree but not staged for
+     * removal. */
+    final TreeSet<String> deleted = new TreeSet<String>();
+
+    /** Files neither tracked nor staged. */
+    final TreeSet<String> untracked = new TreeSet<String>();
+
+    /** Renames and copies among the new and missing files. */
+    final ArrayList<Renames.Pair> renames = new ArrayList<Renames.Pair>();
+
+    /** An empty status of a repository with BRANCHES, sorted, on
+     * ACTIVEBRANCH. */
+    Status(Iterable<String> branches, String activeBranch) {
+        this.branches = branches;
+        this.activeBranch = activeBranch;
+    }
+
+    /** Returns the branch names, sorted. They are read as iterated, so a
+     * repository with many branches lists them without holding them all. */
+    public Iterable<String> getBranches() {
+        return this.branches;
+    }
+
+    /** Returns the name of the active branch. */
+    public String getActiveBranch() {
+        return this.activeBranch;
+    }
+
+    /** Returns the files staged for addition. */
+    public List<String> getStaged() {
+        return new ArrayList<String>(this.staged);
+    }
+
+    /** Returns the files staged for removal. */
+    public List<String> getRemoved() {
+        return new ArrayList<String>(this.removed);
+    }
+
+    /** Returns the tracked files changed but not staged. */
+    public List<String> getModified() {
+        return new ArrayList<String>(this.modified);
+    }
+
+    /** Returns the tracked files missing but not staged for removal. */
+    public List<String> getDeleted() {
+        return new ArrayList<String>(this.deleted);
+    }
+
+    /** Returns the files neither tracked nor staged. */
+    public List<String> getUntracked() {
+        return new ArrayList<String>(this.untracked);
+    }
+
+    /** Returns the renames and copies found, most similar first. */
+    public List<Renames.Pair> getRenames() {
+        return this.renames;
+    }
+}
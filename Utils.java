@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -25,7 +26,9 @@ class Utils {
 
     /* SHA-1 HASH VALUES. */
 
-    /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
+    /** The length of a complete SHA-1 UID as a hexadecimal numeral. The
+     *  length of the hashcodes of a repository is that of its
+     *  HashEngine.uidLength(). */
     static final int UID_LENGTH = 40;
 
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
@@ -215,6 +218,19 @@ class Utils {
         }
     }
 
+    /** Returns the object serialized as BYTES, casting it to EXPECTEDCLASS.
+     *  Throws IllegalArgumentException in case of problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try (ObjectInputStream in =
+                 new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
 
 
     /* MESSAGES AND ERROR REPORTING */
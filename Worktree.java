@@ -0,0 +1,116 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The files of the working tree. Filenames are paths relative to the top
+ * of the tree, separated by slashes whatever the platform, e.g.
+ * src/wug.txt. A walk descends into every directory except the .gitlet
+ * directory and those the ignore rules match, which it skips whole
+ * without listing them, and reports the plain files that are not ignored.
+ * Symbolic links are not followed.
+ *
+ * @author Nitin Nazeer
+ */
+public class Worktree {
+
+    /** Returns the files under the directory DIR of the working tree, or
+     * under the top if DIR is empty, that IGNORE does not ignore. */
+    static List<String> files(String dir, Ignore ignore) {
+        Path top = Repo.CWD.toPath();
+        Path start = dir.isEmpty() ? top : top.resolve(dir);
+        ArrayList<String> result = new ArrayList<String>();
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(
+                        Path path, BasicFileAttributes attrs) {
+                    if (!path.equals(top)
+                            && ignore.ignored(name(top, path), true)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path path,
+                                                 BasicFileAttributes attrs) {
+                    String filename = name(top, path);
+                    if (attrs.isRegularFile()
+                            && !ignore.ignored(filename, false)) {
+                        result.add(filename);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path path,
+                                                       IOException excp) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException excp) {
+            throw Utils.error("Could not list %s: %s", start,
+                    excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Returns the files of the working tree that IGNORE does not
+     * ignore. */
+    static List<String> files(Ignore ignore) {
+        return files("", ignore);
+    }
+
+    /** Returns the filename of PATH, which is under TOP. */
+    static String name(Path top, Path path) {
+        return top.relativize(path).toString()
+                .replace(File.separatorChar, '/');
+    }
+
+    /** Returns the file of the working tree named FILENAME. */
+    static File file(String filename) {
+        return Utils.join(Repo.CWD, filename);
+    }
+
+    /** Returns FILENAME, a path relative to the working directory as typed
+     * by the user, as a filename of the tree, or null if it lies outside
+     * the tree. */
+    static String normalize(String filename) {
+        Path top = Repo.CWD.toPath().normalize();
+        Path path = top.resolve(filename).normalize();
+        if (!path.startsWith(top)) {
+            return null;
+        }
+        return name(top, path);
+    }
+
+    /** Write the blob BLOB to working file FILENAME, creating the
+     * directories above it. */
+    static void write(String filename, Blob blob) {
+        File file = file(filename);
+        file.getParentFile().mkdirs();
+        blob.writeTo(file);
+    }
+
+    /** Delete working file FILENAME, and then each directory above it that
+     * is left empty. Returns false if there was no such file. */
+    static boolean delete(String filename) {
+        File file = file(filename);
+        if (file.isDirectory() || !file.delete()) {
+            return false;
+        }
+        File dir = file.getParentFile();
+        while (dir != null && !dir.equals(Repo.CWD) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+        return true;
+    }
+}